@@ -0,0 +1,107 @@
+package at.pwimmer.ft.benchmarks;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the single-file operations of the {@link FileTaggerUtils}. Each invocation works on the next file of the
+ * fixture tree, so the benchmarks do not only hit the same cached inode over and over again.
+ * <p>
+ * <b>Note</b>: A delete needs an attribute to delete, so {@link #writeAndDeleteAttribute()} measures both.
+ * The cost of the delete alone is the difference to {@link #writeAttributeTo()}. The default parameters keep all
+ * attributes of a file within the single 4KB block ext4 offers, larger combinations fail their trial with a message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttributeBenchmark {
+
+    @Param({"1000"})
+    private int fileCount;
+
+    @Param({"1", "4"})
+    private int attributesPerFile;
+
+    @Param({"36", "512"})
+    private int valueSize;
+
+    private Path root;
+    private List<Path> files;
+    private String value;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Fixtures.createRoot();
+        value = "w".repeat(valueSize);
+
+        // Check once, that the file-store can hold the fixture and both benchmark attributes on one file.
+        try {
+            files = Fixtures.createTree(root, fileCount, attributesPerFile, valueSize);
+            FileTaggerUtils.writeAttributeTo(files.get(0), "benchmark", value);
+            FileTaggerUtils.writeAttributeTo(files.get(0), "benchmark-delete", value);
+            FileTaggerUtils.deleteAttribute(files.get(0), "benchmark-delete");
+        }
+        catch(FileTaggerException ex) {
+            // A failed setup is not torn down by JMH, so remove the fixture right away.
+            Fixtures.delete(root);
+            throw new IllegalStateException("The file-store of '"+root+"' rejects "+attributesPerFile+" attributes with "
+                    +valueSize+" bytes per file, skipping this combination: "+ex.getMessage(), ex);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public Map<String, String> listAttributes() throws FileTaggerException {
+        return FileTaggerUtils.listAttributes(nextFile());
+    }
+
+    @Benchmark
+    public String readAttributeFrom() throws FileTaggerException {
+        return FileTaggerUtils.readAttributeFrom(nextFile(), Fixtures.UUID_ATTRIBUTE);
+    }
+
+    @Benchmark
+    public boolean writeAttributeTo() throws FileTaggerException {
+        return FileTaggerUtils.writeAttributeTo(nextFile(), "benchmark", value);
+    }
+
+    @Benchmark
+    public boolean writeAndDeleteAttribute() throws FileTaggerException {
+        final Path file = nextFile();
+        FileTaggerUtils.writeAttributeTo(file, "benchmark-delete", value);
+        return FileTaggerUtils.deleteAttribute(file, "benchmark-delete");
+    }
+
+    private Path nextFile() {
+        final Path file = files.get(cursor);
+        cursor = cursor + 1 == files.size() ? 0 : cursor + 1;
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package at.pwimmer.ft.benchmarks;
+
+import at.pwimmer.ft.AttributeSession;
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Creates and removes the fixture trees of the benchmarks. The trees are created below the directory of the
+ * system-property <code>ft.bench.dir</code> (default: <code>java.io.tmpdir</code>), so the same benchmark can
+ * be run on tmpfs, a local disk or a slow external drive.
+ */
+final class Fixtures {
+    static final String UUID_ATTRIBUTE = "uuid";
+    private static final int FILES_PER_DIRECTORY = 500;
+
+    private Fixtures() {
+        // private no-arg constructor to hide the implicit public one.
+    }
+
+    /**
+     * Creates a tree with the passed number of empty files, spread over directories of 500 files each.
+     * Every file gets a <code>uuid</code> attribute and <em>attributesPerFile - 1</em> further attributes,
+     * each with a value of <em>valueSize</em> characters.
+     */
+    static List<Path> createTree(Path root, int fileCount, int attributesPerFile, int valueSize) throws IOException, FileTaggerException {
+        final String value = "v".repeat(valueSize);
+        final List<Path> files = new ArrayList<>(fileCount);
+        for(int i = 0; i < fileCount; i++) {
+            final Path directory = Files.createDirectories(root.resolve("dir-" + (i / FILES_PER_DIRECTORY)));
+            final Path file = Files.createFile(directory.resolve("movie-" + i + ".mp4"));
+
+            final AttributeSession session = FileTaggerUtils.openSession(file);
+            session.write(UUID_ATTRIBUTE, uuid(i));
+            for(int a = 1; a < attributesPerFile; a++)  session.write("attribute-" + a, value);
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the UUID-like value written to the file with the passed number.
+     */
+    static String uuid(int i) {
+        return String.format("00000000-0000-0000-0000-%012d", i);
+    }
+
+    static Path createRoot() throws IOException {
+        final Path base = Path.of(System.getProperty("ft.bench.dir", System.getProperty("java.io.tmpdir")));
+        return Files.createTempDirectory(Files.createDirectories(base), "file-tagger-bench");
+    }
+
+    static void delete(Path root) throws IOException {
+        if(root == null)  return;
+
+        try(Stream<Path> paths = Files.walk(root)) {
+            for(Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.deleteIfExists(path);
+        }
+    }
+}
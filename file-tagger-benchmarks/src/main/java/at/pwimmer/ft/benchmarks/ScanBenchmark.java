@@ -0,0 +1,85 @@
+package at.pwimmer.ft.benchmarks;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.scan.ScanResult;
+import at.pwimmer.ft.scan.TreeScanner;
+import at.pwimmer.ft.schedule.IoScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole tree-scans of the {@link TreeScanner}: reading all attributes of every file and searching a
+ * single UUID by comparing the raw values. The parallelism and the adaptive or fixed scheduling are parameters,
+ * so the scaling on the storage type under test becomes visible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"10000"})
+    private int fileCount;
+
+    @Param({"5"})
+    private int attributesPerFile;
+
+    @Param({"36"})
+    private int valueSize;
+
+    @Param({"1", "4", "16"})
+    private int parallelism;
+
+    @Param({"adaptive", "fixed"})
+    private String scheduler;
+
+    private Path root;
+    private TreeScanner scanner;
+    private String searchedUuid;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, FileTaggerException {
+        root = Fixtures.createRoot();
+        Fixtures.createTree(root, fileCount, attributesPerFile, valueSize);
+        // A new scheduler per trial, so no trial starts with the limits learned by another one.
+        IoScheduler.setCurrent("fixed".equals(scheduler) ? null : new IoScheduler());
+        scanner = new TreeScanner(parallelism, null, Collections.emptyList(), Collections.emptyList());
+        searchedUuid = Fixtures.uuid(fileCount / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    // The consumers are called concurrently by the workers, so they do not touch a (non-thread-safe) Blackhole.
+    // The attributes are read anyway and the returned result is consumed by JMH.
+
+    @Benchmark
+    public ScanResult scanTree() {
+        return scanner.scan(root, (path, attributes) -> {});
+    }
+
+    @Benchmark
+    public ScanResult findUuid() {
+        return scanner.find(root, Fixtures.UUID_ATTRIBUTE, searchedUuid, path -> {});
+    }
+}
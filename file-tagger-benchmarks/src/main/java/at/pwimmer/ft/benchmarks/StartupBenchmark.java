@@ -0,0 +1,81 @@
+package at.pwimmer.ft.benchmarks;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the wall-time of whole one-off invocations of the run-jar, in example from a script tagging thousands
+ * of files one by one. Each invocation starts a new JVM, reads one attribute and exits. The launch-modes compare
+ * the plain start with the AppCDS-archive of the <code>fast-start</code> profile, with and without limiting the
+ * JIT to the C1-compiler.
+ * <p>
+ * The run-jar is taken from the system-property <code>ft.bench.jar</code>
+ * (default: <code>../target/file-tagger-1.0-run.jar</code>), its archive is expected next to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"default", "cds", "cds-c1"})
+    private String mode;
+
+    private Path root;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, FileTaggerException {
+        final Path jar = Path.of(System.getProperty("ft.bench.jar", "../target/file-tagger-1.0-run.jar")).toAbsolutePath();
+        final Path archive = jar.resolveSibling(jar.getFileName().toString().replace(".jar", ".jsa"));
+        if(Files.notExists(jar))
+            throw new IllegalStateException("The run-jar '"+jar+"' does not exist, build it with 'mvn package' first");
+        if(!mode.equals("default") && Files.notExists(archive))
+            throw new IllegalStateException("The archive '"+archive+"' does not exist, build it with 'mvn package -Pfast-start' first");
+
+        root = Fixtures.createRoot();
+        final Path file = Files.createFile(root.resolve("movie.mp4"));
+        FileTaggerUtils.writeAttributeTo(file, Fixtures.UUID_ATTRIBUTE, Fixtures.uuid(1));
+
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if(!mode.equals("default"))  command.add("-XX:SharedArchiveFile=" + archive);
+        if(mode.equals("cds-c1"))  command.add("-XX:TieredStopAtLevel=1");
+        command.addAll(List.of("-jar", jar.toString(), "read", "-an", Fixtures.UUID_ATTRIBUTE, file.toString()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public int readOnce() throws IOException, InterruptedException {
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start().waitFor();
+    }
+}
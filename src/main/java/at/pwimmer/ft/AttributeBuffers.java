@@ -0,0 +1,110 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.metrics.AttributeMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+/**
+ * Holds the reusable per-thread buffers for reading attribute-values. Each thread owns one direct {@link ByteBuffer},
+ * which is big enough for any attribute on Linux (64KB), and one scratch array for decoding the value.
+ * <p>
+ * Because the direct buffer is passed to the view, the JDK reads the value straight into it without an intermediate
+ * native copy and without asking the size of the attribute first. So reading an attribute costs one syscall and
+ * the only allocation is the resulting string, while matching a value against some bytes does not allocate at all.
+ */
+final class AttributeBuffers {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<AttributeBuffers> LOCAL = ThreadLocal.withInitial(AttributeBuffers::new);
+
+    private ByteBuffer direct = ByteBuffer.allocateDirect(DEFAULT_CAPACITY);
+    private byte[] scratch = new byte[1024];
+
+    private AttributeBuffers() {
+        // private constructor, the buffers are only accessed via the thread-local instance.
+    }
+
+    /**
+     * Reads the attribute into the direct buffer of the current thread. The returned buffer is flipped and only
+     * valid until the next call on the same thread. The read is recorded by the {@link AttributeMetrics}.
+     */
+    static ByteBuffer read(Path path, UserDefinedFileAttributeView view, String attributeName) throws IOException {
+        final AttributeBuffers buffers = LOCAL.get();
+        ByteBuffer dst = buffers.direct;
+        dst.clear();
+
+        final long start = AttributeMetrics.start();
+        try {
+            try {
+                view.read(attributeName, dst);
+            }
+            catch(IOException ex) {
+                // Other platforms may allow larger values, so only ask the size if the buffer was too small.
+                final int size = size(path, view, attributeName);
+                if(size <= dst.capacity())  throw ex;
+
+                buffers.direct = dst = ByteBuffer.allocateDirect(size);
+                view.read(attributeName, dst);
+            }
+        }
+        catch(IOException ex) {
+            AttributeMetrics.failed(AttributeMetrics.Operation.READ, start, path, attributeName);
+            throw ex;
+        }
+
+        dst.flip();
+        AttributeMetrics.record(AttributeMetrics.Operation.READ, start, dst.remaining(), path, attributeName);
+        return dst;
+    }
+
+    /**
+     * Decodes the remaining UTF-8 bytes of the passed buffer into a string, using the scratch array of the current thread.
+     */
+    static String decode(ByteBuffer src) {
+        final AttributeBuffers buffers = LOCAL.get();
+        final int length = src.remaining();
+        if(buffers.scratch.length < length)  buffers.scratch = new byte[Math.max(length, buffers.scratch.length * 2)];
+
+        src.get(buffers.scratch, 0, length);
+        return new String(buffers.scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the remaining bytes of the passed buffer into a new array.
+     */
+    static byte[] copy(ByteBuffer src) {
+        final byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Compares the remaining bytes of the passed buffer with the expected bytes, without allocating anything.
+     */
+    static boolean equals(ByteBuffer src, byte[] expected) {
+        final int length = src.remaining();
+        if(length != expected.length)  return false;
+
+        final int position = src.position();
+        for(int i = 0; i < length; i++) {
+            if(src.get(position + i) != expected[i])  return false;
+        }
+        return true;
+    }
+
+    private static int size(Path path, UserDefinedFileAttributeView view, String attributeName) throws IOException {
+        final long start = AttributeMetrics.start();
+        try {
+            final int size = view.size(attributeName);
+            AttributeMetrics.record(AttributeMetrics.Operation.SIZE, start, 0, path, attributeName);
+            return size;
+        }
+        catch(IOException ex) {
+            AttributeMetrics.failed(AttributeMetrics.Operation.SIZE, start, path, attributeName);
+            throw ex;
+        }
+    }
+}
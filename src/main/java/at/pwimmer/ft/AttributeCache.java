@@ -0,0 +1,281 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Attribute Cache</h1>
+ * <p>
+ *     An optional in-memory cache in front of the read-methods of the {@link FileTaggerUtils}. The extended
+ *     attributes of a file are cached by its identity ({@link BasicFileAttributes#fileKey()}, the device and inode
+ *     on Unix), so renamed files and hard-links share one entry. Each hit is validated by one <em>stat</em>: if the
+ *     ctime or the size of the file has changed since the attributes have been read, they are read again.
+ * </p>
+ * <p>
+ *     Attributes in a sidecar-file are bound to the file-name, so they are cached by the normalized path instead,
+ *     and each hit is validated by the {@link FileStamp} of the file, which includes the one of its sidecar-file.
+ *     So tags written by another process are noticed as well.
+ * </p>
+ * <p>
+ *     The cache holds at most <em>maxEntries</em> files and evicts the least-recently used one. Every write and
+ *     delete done by an {@link AttributeSession} invalidates the entry of the file, so changes of this process within
+ *     the granularity of the ctime are never missed.
+ * </p>
+ * <p>
+ *     The cache is disabled by default, it is enabled by the system-property <code>ft.cache</code> (the maximum
+ *     number of entries), the <code>--cache</code> option of the command-line or {@link #enable(int)}.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Any tag-change in a sidecar-file invalidates the entries of all files in its directory, which is
+ *     safe, because they are only read again.
+ * </p>
+ */
+public final class AttributeCache {
+    private static volatile boolean unixSupported = true;
+    private static volatile AttributeCache current = fromProperty(System.getProperty("ft.cache"));
+
+    private final int maxEntries;
+    private final LinkedHashMap<Object, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new cache, which is not used by the {@link FileTaggerUtils} until it is passed to {@link #setCurrent}.
+     * @param maxEntries The maximum number of files to cache.
+     */
+    public AttributeCache(int maxEntries) {
+        if(maxEntries < 1)
+            throw new IllegalArgumentException("The passed maximum number of entries must be at least one!");
+
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                if(size() <= AttributeCache.this.maxEntries)  return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return The cache used by the {@link FileTaggerUtils}, or <code>null</code> if caching is disabled.
+     */
+    public static AttributeCache getCurrent() {
+        return current;
+    }
+
+    /**
+     * Sets the cache used by the {@link FileTaggerUtils}, <code>null</code> disables caching.
+     */
+    public static void setCurrent(AttributeCache cache) {
+        current = cache;
+    }
+
+    /**
+     * Enables caching with a new, empty cache holding at most the passed number of files.
+     * @param maxEntries The maximum number of files to cache.
+     * @return The new cache, in example to read its statistics.
+     */
+    public static AttributeCache enable(int maxEntries) {
+        final AttributeCache cache = new AttributeCache(maxEntries);
+        current = cache;
+        return cache;
+    }
+
+    /**
+     * Removes the cached attributes of the file at the passed path, so they are read again on the next access.
+     * @param path The path of the file, which has been changed.
+     */
+    public void invalidate(Path path) {
+        // Loads running concurrently compare the generation and do not store their possibly outdated attributes.
+        generation.incrementAndGet();
+        invalidations.increment();
+
+        final Identity identity = identify(path);
+        if(identity != null) {
+            synchronized(entries) {
+                entries.remove(identity.key);
+            }
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        synchronized(entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The share of the lookups served from the cache, between zero and one.
+     */
+    public double getHitRate() {
+        final long hit = hits.sum();
+        final long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return A one-line summary of the statistics, in example for the <code>--stats</code> option.
+     */
+    public String summary() {
+        return String.format(Locale.ROOT, "cache: %d of %d entries, %d hits, %d misses (%.1f%% hit-rate), %d invalidations, %d evictions%n",
+                size(), maxEntries, getHits(), getMisses(), getHitRate() * 100, getInvalidations(), getEvictions());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PACKAGE - The methods used by the FileTaggerUtils and the AttributeSessions.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the cached attributes of the file, if the entry is still valid, otherwise loads and caches them.
+     * @return An unmodifiable map of the attributes.
+     */
+    Map<String, String> get(Path path, Loader loader) throws FileTaggerException {
+        final Identity identity = identify(path);
+        if(identity != null) {
+            final Entry entry;
+            synchronized(entries) {
+                entry = entries.get(identity.key);
+            }
+            if(entry != null && entry.stamp == identity.stamp && entry.size == identity.size) {
+                hits.increment();
+                return entry.attributes;
+            }
+        }
+
+        misses.increment();
+        final long loadedGeneration = generation.get();
+        final Map<String, String> attributes = Collections.unmodifiableMap(new HashMap<>(loader.load()));
+        if(identity != null) {
+            synchronized(entries) {
+                if(generation.get() == loadedGeneration)  entries.put(identity.key, new Entry(identity, attributes));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Invalidates the entry of the file in the current cache, if caching is enabled.
+     */
+    static void invalidateCurrent(Path path) {
+        final AttributeCache cache = current;
+        if(cache != null)  cache.invalidate(path);
+    }
+
+    interface Loader {
+        Map<String, String> load() throws FileTaggerException;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for identifying the files with one single stat.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static Identity identify(Path path) {
+        try {
+            if(StorageBackend.getCurrent().viewOf(path) instanceof SidecarAttributeView) {
+                // The sidecar-tags belong to the name of the file and do not change its size, only the stamp.
+                return new Identity(path.toAbsolutePath().normalize(), FileStamp.of(path), 0);
+            }
+
+            if(unixSupported) {
+                try {
+                    // The unix-view returns the file-key, size and ctime with one single stat.
+                    final Map<String, Object> attrs = Files.readAttributes(path, "unix:fileKey,size,ctime");
+                    final Object key = attrs.get("fileKey");
+                    return new Identity(key != null ? key : path.toAbsolutePath().normalize(),
+                            ((FileTime) attrs.get("ctime")).to(TimeUnit.NANOSECONDS), (Long) attrs.get("size"));
+                }
+                catch(UnsupportedOperationException | IllegalArgumentException ex) {
+                    // The platform has no unix attribute-view, so fall back to the basic attributes from now on.
+                    unixSupported = false;
+                }
+            }
+
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            final Object key = attrs.fileKey();
+            return new Identity(key != null ? key : path.toAbsolutePath().normalize(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), attrs.size());
+        }
+        catch(IOException | FileTaggerException ex) {
+            return null;
+        }
+    }
+
+    private static AttributeCache fromProperty(String property) {
+        if(property == null || property.isBlank())  return null;
+        return new AttributeCache(Integer.parseInt(property.trim()));
+    }
+
+    private static final class Identity {
+        private final Object key;
+        private final long stamp;
+        private final long size;
+
+        Identity(Object key, long stamp, long size) {
+            this.key = key;
+            this.stamp = stamp;
+            this.size = size;
+        }
+    }
+
+    private static final class Entry {
+        private final long stamp;
+        private final long size;
+        private final Map<String, String> attributes;
+
+        Entry(Identity identity, Map<String, String> attributes) {
+            this.stamp = identity.stamp;
+            this.size = identity.size;
+            this.attributes = attributes;
+        }
+    }
+}
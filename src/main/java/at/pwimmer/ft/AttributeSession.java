@@ -0,0 +1,335 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.metrics.AttributeMetrics;
+import at.pwimmer.ft.packed.PackedAttribute;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h1>Attribute Session</h1>
+ * <p>
+ *     A session bundles many attribute-operations on one single file. The {@link UserDefinedFileAttributeView}
+ *     is opened only once when the session is created by {@link FileTaggerUtils#openSession(Path)} and the
+ *     attribute-names are listed only once, on first demand. Afterwards the cached names are kept in sync by the
+ *     write- and delete-methods of this session, so existence-checks do not cost another syscall.
+ * </p>
+ * <p>
+ *     The methods ending with <em>Known</em> skip the existence-check completely. They should be used when
+ *     the caller already knows that the attribute is set, in example when iterating over {@link #names()}.
+ * </p>
+ * <p>
+ *     <b>Note</b>: A session is not thread-safe and does not notice changes made by other sessions or processes
+ *     after the names have been listed. So keep the session short-lived, in example for tagging one file.
+ * </p>
+ */
+public class AttributeSession {
+    private final Path path;
+    private final UserDefinedFileAttributeView view;
+    private Set<String> names;
+
+    AttributeSession(Path path, UserDefinedFileAttributeView view) {
+        this.path = path;
+        this.view = view;
+    }
+
+    /**
+     * Returns the names of all user-defined attributes set on the file. The names are listed on the first call
+     * and then served from the session-cache.
+     * @return An unmodifiable set of the attribute-names.
+     * @throws FileTaggerException Will be thrown if the attributes could not be listed.
+     */
+    public Set<String> names() throws FileTaggerException {
+        return Collections.unmodifiableSet(listNames());
+    }
+
+    /**
+     * Checks if the file has an attribute with the passed <em>attributeName</em> set.
+     * @param attributeName The name of the attribute to check.
+     * @return The boolean result, true if attribute available, false otherwise.
+     * @throws FileTaggerException Will be thrown if the attributes could not be listed.
+     */
+    public boolean has(String attributeName) throws FileTaggerException {
+        validateName(attributeName);
+        return listNames().contains(attributeName);
+    }
+
+    /**
+     * Reads the value of the passed <em>attributeName</em>. If the attribute is not set on the file,
+     * a {@link FileTaggerException} will be thrown.
+     * @param attributeName The name of the attribute to read.
+     * @return The value of the attribute.
+     * @throws FileTaggerException Will be thrown if the attribute is not set or could not be read.
+     */
+    public String read(String attributeName) throws FileTaggerException {
+        if(!has(attributeName))
+            throw new FileTaggerException("The attribute '"+attributeName+"' is not set on '"+path+"'");
+
+        return readKnown(attributeName);
+    }
+
+    /**
+     * Reads the value of the passed <em>attributeName</em> without checking if it is set at all.
+     * @param attributeName The name of the attribute, which is known to be set on the file.
+     * @return The value of the attribute.
+     * @throws FileTaggerException Will be thrown if the attribute could not be read, in example because it is not set.
+     */
+    public String readKnown(String attributeName) throws FileTaggerException {
+        validateName(attributeName);
+
+        try {
+            return extract(attributeName);
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read attribute from '"+path+"'", ex);
+        }
+    }
+
+    /**
+     * Reads all user-defined attributes of the file with one single listing of the attribute-names.
+     * @return A map containing the attribute-names as the key and the attribute-value as the value.
+     * @throws FileTaggerException Will be thrown if the attributes could not be read.
+     */
+    public Map<String, String> readAll() throws FileTaggerException {
+        return readAllKnown(listNames());
+    }
+
+    /**
+     * Reads the raw values of all user-defined attributes of the file with one single listing of the attribute-names,
+     * in example to tell {@link PackedAttribute}s apart, which are no valid UTF-8 and therefore garbled as string.
+     * @return A map containing the attribute-names as the key and a copy of the raw attribute-value as the value.
+     * @throws FileTaggerException Will be thrown if the attributes could not be read.
+     */
+    public Map<String, byte[]> readAllBytes() throws FileTaggerException {
+        final Map<String, byte[]> map = new HashMap<>();
+        try {
+            for(String an : listNames())  map.put(an, AttributeBuffers.copy(AttributeBuffers.read(path, view, an)));
+            return map;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Failed to read all attributes from '"+path+"'", ex);
+        }
+    }
+
+    /**
+     * Reads the passed attributes, but silently skips all names which are not set on the file.
+     * @param attributeNames The names of the attributes to read.
+     * @return A map containing the attribute-names as the key and the attribute-value as the value.
+     * @throws FileTaggerException Will be thrown if the attributes could not be read.
+     */
+    public Map<String, String> readAll(Collection<String> attributeNames) throws FileTaggerException {
+        final Set<String> available = listNames();
+        final Map<String, String> map = new HashMap<>();
+        for(String an : attributeNames) {
+            if(available.contains(an))  map.put(an, readKnown(an));
+        }
+        return map;
+    }
+
+    /**
+     * Checks if the attribute with the passed <em>attributeName</em> is set and its value equals the passed
+     * UTF-8 encoded <em>expectedValue</em>. The comparison is done on the raw bytes in a reusable per-thread buffer,
+     * so no string is created for the read value.
+     * @param attributeName The name of the attribute to compare.
+     * @param expectedValue The UTF-8 encoded value, which the attribute has to match.
+     * @return The boolean result, true if the attribute is set with that exact value, false otherwise.
+     * @throws FileTaggerException Will be thrown if the attribute could not be read.
+     */
+    public boolean matches(String attributeName, byte[] expectedValue) throws FileTaggerException {
+        if(expectedValue == null)
+            throw new IllegalArgumentException("The passed expected value is null!");
+        if(!has(attributeName))  return false;
+
+        try {
+            return AttributeBuffers.equals(AttributeBuffers.read(path, view, attributeName), expectedValue);
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read attribute from '"+path+"'", ex);
+        }
+    }
+
+    /**
+     * Writes the passed attribute-name and attribute-value combination to the file. If there is already an
+     * attribute set with that name, its value will be overridden.
+     * @param attributeName The name of the attribute to write.
+     * @param attributeValue The value of the attribute to write.
+     * @throws FileTaggerException Will be thrown if the attribute could not be written.
+     */
+    public void write(String attributeName, String attributeValue) throws FileTaggerException {
+        validateName(attributeName);
+        if(attributeValue == null || attributeValue.isBlank())
+            throw new IllegalArgumentException("The passed attribute-value is null or blank!");
+
+        writeBuffer(attributeName, StandardCharsets.UTF_8.encode(attributeValue));
+    }
+
+    /**
+     * Writes all entries of the passed map as attributes to the file.
+     * @param attributes The attribute-names and their values to write.
+     * @throws FileTaggerException Will be thrown if one of the attributes could not be written.
+     */
+    public void writeAll(Map<String, String> attributes) throws FileTaggerException {
+        for(Map.Entry<String, String> entry : attributes.entrySet())
+            write(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Reads the {@link PackedAttribute} with the passed <em>attributeName</em>. The raw value is copied once out of
+     * the per-thread buffer, its fields are only decoded when they are accessed.
+     * @param attributeName The name of the packed attribute to read.
+     * @return The packed attribute.
+     * @throws FileTaggerException Will be thrown if the attribute is not set, not packed or could not be read.
+     */
+    public PackedAttribute readPacked(String attributeName) throws FileTaggerException {
+        if(!has(attributeName))
+            throw new FileTaggerException("The attribute '"+attributeName+"' is not set on '"+path+"'");
+
+        try {
+            return PackedAttribute.decode(AttributeBuffers.copy(AttributeBuffers.read(path, view, attributeName)));
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read attribute from '"+path+"'", ex);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new FileTaggerException("The attribute '"+attributeName+"' of '"+path+"' is not packed: "+ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes the passed {@link PackedAttribute} with all its fields as one attribute to the file. If there is
+     * already an attribute set with that name, its value will be overridden.
+     * @param attributeName The name of the attribute to write.
+     * @param attribute The packed fields to write.
+     * @throws FileTaggerException Will be thrown if the attribute could not be written, in example because it is too large.
+     */
+    public void writePacked(String attributeName, PackedAttribute attribute) throws FileTaggerException {
+        validateName(attributeName);
+        if(attribute == null)
+            throw new IllegalArgumentException("The passed packed attribute is null!");
+
+        writeBuffer(attributeName, ByteBuffer.wrap(attribute.toBytes()));
+    }
+
+    /**
+     * Deletes the passed <em>attributeName</em> from the file. If the attribute is not set, nothing will be done.
+     * @param attributeName The name of the attribute to delete.
+     * @return The boolean result, <code>true</code> if the attribute has been removed, <code>false</code> otherwise.
+     * @throws FileTaggerException Will be thrown if the attribute could not be deleted.
+     */
+    public boolean delete(String attributeName) throws FileTaggerException {
+        if(!has(attributeName))  return false;
+
+        deleteKnown(attributeName);
+        return true;
+    }
+
+    /**
+     * Deletes the passed <em>attributeName</em> from the file without checking if it is set at all.
+     * @param attributeName The name of the attribute, which is known to be set on the file.
+     * @throws FileTaggerException Will be thrown if the attribute could not be deleted, in example because it is not set.
+     */
+    public void deleteKnown(String attributeName) throws FileTaggerException {
+        validateName(attributeName);
+
+        final long start = AttributeMetrics.start();
+        try {
+            view.delete(attributeName);
+            AttributeMetrics.record(AttributeMetrics.Operation.DELETE, start, 0, path, attributeName);
+            if(names != null)  names.remove(attributeName);
+        }
+        catch(IOException ex) {
+            AttributeMetrics.failed(AttributeMetrics.Operation.DELETE, start, path, attributeName);
+            throw new FileTaggerException("Could not delete attribute '"+attributeName+"' from '"+path+"'", ex);
+        }
+        finally {
+            AttributeCache.invalidateCurrent(path);
+        }
+    }
+
+    /**
+     * Deletes all passed attributes, which are set on the file.
+     * @param attributeNames The names of the attributes to delete.
+     * @return The number of actually deleted attributes.
+     * @throws FileTaggerException Will be thrown if one of the attributes could not be deleted.
+     */
+    public int deleteAll(Collection<String> attributeNames) throws FileTaggerException {
+        int deleted = 0;
+        for(String an : attributeNames) {
+            if(delete(an))  deleted++;
+        }
+        return deleted;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for listing the names once and extracting the attribute-values.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Set<String> listNames() throws FileTaggerException {
+        if(names == null) {
+            final long start = AttributeMetrics.start();
+            try {
+                names = new LinkedHashSet<>(view.list());
+                AttributeMetrics.record(AttributeMetrics.Operation.LIST, start, 0, path, null);
+            }
+            catch(IOException ex) {
+                AttributeMetrics.failed(AttributeMetrics.Operation.LIST, start, path, null);
+                throw new FileTaggerException("Failed to read list of attributes from '"+path+"'", ex);
+            }
+        }
+        return names;
+    }
+
+    private void writeBuffer(String attributeName, ByteBuffer value) throws FileTaggerException {
+        final long start = AttributeMetrics.start();
+        try {
+            final int bytes = view.write(attributeName, value);
+            AttributeMetrics.record(AttributeMetrics.Operation.WRITE, start, bytes, path, attributeName);
+            if(names != null)  names.add(attributeName);
+        }
+        catch(IOException ex) {
+            AttributeMetrics.failed(AttributeMetrics.Operation.WRITE, start, path, attributeName);
+            throw new FileTaggerException("Could not write attribute to '"+path+"'", ex);
+        }
+        finally {
+            // Even a failed write may have changed the attribute, so never serve the cached value again.
+            AttributeCache.invalidateCurrent(path);
+        }
+    }
+
+    private Map<String, String> readAllKnown(Collection<String> attributeNames) throws FileTaggerException {
+        final Map<String, String> map = new HashMap<>();
+        try {
+            for(String an : attributeNames)  map.put(an, extract(an));
+            return map;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Failed to read all attributes from '"+path+"'", ex);
+        }
+    }
+
+    private String extract(String attributeName) throws IOException {
+        // Read the attribute into the reusable direct buffer of this thread and decode it into a string.
+        return AttributeBuffers.decode(AttributeBuffers.read(path, view, attributeName));
+    }
+
+    private static void validateName(String attributeName) {
+        if(attributeName == null || attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is null or blank!");
+    }
+}
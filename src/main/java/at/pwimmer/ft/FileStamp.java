@@ -0,0 +1,73 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>File Stamp</h1>
+ * <p>
+ *     Returns a cheap change-stamp of a file, which can be compared to decide if the user-defined attributes of a
+ *     file have to be read again. Writing or deleting an attribute does not change the modification-time of a file,
+ *     but it does change its status-change-time (<em>ctime</em>), so the ctime is used wherever the filesystem
+ *     exposes it via the <code>unix</code> attribute-view. Otherwise the modification-time is used.
+ * </p>
+ * <p>
+ *     Attributes stored in a sidecar-file of the {@link StorageBackend} do not change the ctime of the tagged file,
+ *     so if the directory has a sidecar-file, the later one of both stamps is returned. Any tag-change in the
+ *     directory therefore marks all of its files as changed, which is safe, because they are only read again.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Reading the stamp costs one <em>stat</em> of the file and one of the sidecar-file and never
+ *     touches the attributes themselves.
+ * </p>
+ */
+public final class FileStamp {
+    private static volatile boolean unixSupported = true;
+
+    private FileStamp() {
+        // private no-arg constructor to hide the implicit public one.
+    }
+
+    /**
+     * Returns the change-stamp of the file at the passed path in nanoseconds, symbolic links are not followed.
+     * @param path The path of the file to stamp.
+     * @return The ctime of the file if available, otherwise its modification-time.
+     * @throws IOException Will be thrown if the file does not exist or could not be accessed.
+     */
+    public static long of(Path path) throws IOException {
+        final long stamp = ownStamp(path);
+        final Path parent = path.toAbsolutePath().getParent();
+        if(parent == null)  return stamp;
+
+        try {
+            return Math.max(stamp, ownStamp(SidecarAttributeView.sidecarOf(path)));
+        }
+        catch(NoSuchFileException ex) {
+            return stamp;
+        }
+    }
+
+    private static long ownStamp(Path path) throws IOException {
+        if(unixSupported) {
+            try {
+                return toNanos((FileTime) Files.getAttribute(path, "unix:ctime", LinkOption.NOFOLLOW_LINKS));
+            }
+            catch(UnsupportedOperationException | IllegalArgumentException ex) {
+                // The platform has no unix attribute-view, so fall back to the modification-time from now on.
+                unixSupported = false;
+            }
+        }
+        return toNanos(Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,15 +1,12 @@
 package at.pwimmer.ft;
 
 import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.packed.PackedAttribute;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.UserDefinedFileAttributeView;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,6 +20,13 @@ import java.util.Map;
  *     or to list all user-defined attributes of a specific file.
  * </p>
  * <p>
+ *     On filesystems without user-defined attributes, like FAT- or exFAT-drives, the attributes are stored in a
+ *     sidecar-file of the directory instead, see the {@link StorageBackend}.
+ * </p>
+ * <p>
+ *     The read-methods can be served from memory by enabling the {@link AttributeCache}.
+ * </p>
+ * <p>
  *     <b>Note</b>: This utility can only read/write user-defined attributes. Attributes like the name, title
  *     or creation-date will and cannot be modified by these methods. This is because the implementation uses
  *     the {@link UserDefinedFileAttributeView} to access the attributes of the passed files/paths.
@@ -48,27 +52,11 @@ public class FileTaggerUtils {
     public static Map<String, String> listAttributes(Path path) throws FileTaggerException {
         validateParameters(path);
 
-        try {
-            // Open the view and init an empty Hash-Map.
-            final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-            final Map<String, String> map = new HashMap<>();
-
-            // Then load all available attributes from the specified file.
-            final List<String> attributes = view.list();
-
-            // Iterate over the retrieved list of attributes and extract each value into the map.
-            for(String an : attributes) {
-                final String result = extractAttribute(view, an);
-                map.put(an, result);
-            }
+        final AttributeCache cache = AttributeCache.getCurrent();
+        if(cache != null)  return new HashMap<>(cache.get(path, () -> newSession(path).readAll()));
 
-            // Finally, return the map.
-            return map;
-        }
-        catch(IOException ex) {
-            // Will be thrown if the file at the specified path could not be opened or its attributes read.
-            throw new FileTaggerException("Failed to read all attributes from '"+path+"'", ex);
-        }
+        // Open the session once, it lists the attribute-names and extracts each value into the map.
+        return newSession(path).readAll();
     }
 
     /**
@@ -84,15 +72,11 @@ public class FileTaggerUtils {
     public static boolean hasAttribute(Path path, String attributeName) throws FileTaggerException {
         validateParameters(path, attributeName);
 
-        try {
-            // Open the User-Defined File-Attribute view and check if it does have the passed attribute-name set.
-            final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-            return hasViewAttribute(view, attributeName);
-        }
-        catch(IOException ex) {
-            // Will be thrown if the attributes could not be read from the view/file.
-            throw new FileTaggerException("Failed to read list of attributes from '"+path+"'", ex);
-        }
+        final AttributeCache cache = AttributeCache.getCurrent();
+        if(cache != null)  return cache.get(path, () -> newSession(path).readAll()).containsKey(attributeName);
+
+        // Open the session and check if it does have the passed attribute-name set.
+        return newSession(path).has(attributeName);
     }
 
     /**
@@ -109,20 +93,16 @@ public class FileTaggerUtils {
     public static String readAttributeFrom(Path path, String attributeName) throws FileTaggerException {
         validateParameters(path, attributeName);
 
-        try {
-            // Get the UserDefined File-Attribute-View of the passed "path".
-            final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-
-            // Before continuing, check that the view has the corresponding attribute.
-            if(!hasViewAttribute(view, attributeName))
+        final AttributeCache cache = AttributeCache.getCurrent();
+        if(cache != null) {
+            final String value = cache.get(path, () -> newSession(path).readAll()).get(attributeName);
+            if(value == null)
                 throw new FileTaggerException("The attribute '"+attributeName+"' is not set on '"+path+"'");
-
-            return extractAttribute(view, attributeName);
-        }
-        catch(IOException ex) {
-            // Will be thrown if view could not be opened or attribute could not be read.
-            throw new FileTaggerException("Could not read attribute from '"+path+"'", ex);
+            return value;
         }
+
+        // The session checks that the attribute is set before reading it.
+        return newSession(path).read(attributeName);
     }
 
     /**
@@ -139,15 +119,41 @@ public class FileTaggerUtils {
     public static boolean writeAttributeTo(Path path, String attributeName, String attributeValue) throws FileTaggerException {
         validateParameters(path, attributeName, attributeValue);
 
-        try {
-            final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-            final ByteBuffer src = StandardCharsets.UTF_8.encode(attributeValue);
-            view.write(attributeName, src);
-            return true;
-        }
-        catch(IOException ex) {
-            throw new FileTaggerException("Could not write attribute to '"+path+"'", ex);
-        }
+        newSession(path).write(attributeName, attributeValue);
+        return true;
+    }
+
+    /**
+     * Reads the {@link PackedAttribute} with the passed <code>attributeName</code> from the file specified by the
+     * passed {@link Path} object. All fields of the attribute are read with one syscall, but each field is only
+     * decoded when it is accessed.
+     * @param path The path of the file to read the attribute from.
+     * @param attributeName The name of the packed attribute to read.
+     * @return The packed attribute read from the specified path.
+     * @throws FileTaggerException Will be thrown if the attribute is not set, not packed or could not be read.
+     */
+    public static PackedAttribute readPackedAttributeFrom(Path path, String attributeName) throws FileTaggerException {
+        validateParameters(path, attributeName);
+
+        return newSession(path).readPacked(attributeName);
+    }
+
+    /**
+     * Writes the passed {@link PackedAttribute} with all its fields as one attribute to the file specified by the
+     * passed {@link Path} object. If there is already an attribute set with that name, its value will be overridden.
+     * @param path The path of the file to write the attribute to.
+     * @param attributeName The name of the attribute to write.
+     * @param attribute The packed fields to write.
+     * @return The boolean result, which will always be true as long as no exception is thrown.
+     * @throws FileTaggerException Will be thrown if the attribute could not be written to the file.
+     */
+    public static boolean writePackedAttributeTo(Path path, String attributeName, PackedAttribute attribute) throws FileTaggerException {
+        validateParameters(path, attributeName);
+        if(attribute == null)
+            throw new IllegalArgumentException("The passed packed attribute is null!");
+
+        newSession(path).writePacked(attributeName, attribute);
+        return true;
     }
 
     /**
@@ -161,26 +167,26 @@ public class FileTaggerUtils {
     public static boolean deleteAttribute(Path path, String attributeName) throws FileTaggerException {
         validateParameters(path, attributeName);
 
-        try {
-            // Get the UserDefined File-Attribute-View of the passed path.
-            final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-
-            // If the view/file does not have the passed "attributeName" then return false.
-            if(!hasViewAttribute(view, attributeName))  return false;
+        // If the file does not have the passed "attributeName" then the session returns false.
+        return newSession(path).delete(attributeName);
+    }
 
-            // Then try to delete the attribute from the file and return true.
-            view.delete(attributeName);
-            return true;
-        }
-        catch (IOException ex) {
-            // Will be thrown if the view could not be opened or attribute not deleted.
-            throw new FileTaggerException("Could not delete attribute '"+attributeName+"' from '"+path+"'", ex);
-        }
+    /**
+     * Opens a new {@link AttributeSession} on the file specified by the passed {@link Path} object. The session opens
+     * the {@link UserDefinedFileAttributeView} only once and lists the attribute-names only once, so many attributes
+     * can be read, written and deleted with the minimum number of syscalls.
+     * @param path The path of the file to open the session on.
+     * @return The new session for the passed file.
+     * @throws FileTaggerException Will be thrown if the filesystem of the file does not support user-defined attributes.
+     */
+    public static AttributeSession openSession(Path path) throws FileTaggerException {
+        validateParameters(path);
+        return newSession(path);
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     ///
-    /// PRIVATE - The private methods for check the view if the attribute is set.
+    /// PRIVATE - The private methods for validating the passed parameters.
     ///
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -203,18 +209,8 @@ public class FileTaggerUtils {
             throw new IllegalArgumentException("The passed attribute-value is null or blank!");
     }
 
-    private static String extractAttribute(UserDefinedFileAttributeView view, String attributeName) throws IOException {
-        // If view has the attribute, allocate a Byte-Buffer and read the attribute into it.
-        final ByteBuffer dst = ByteBuffer.allocate(view.size(attributeName));
-        view.read(attributeName, dst);
-        dst.flip();
-
-        // Finally, decode the byte-buffer into a string and return it.
-        return String.valueOf(StandardCharsets.UTF_8.decode(dst));
-    }
-
-    private static boolean hasViewAttribute(UserDefinedFileAttributeView view, String attributeName) throws IOException {
-        final List<String> list = view.list();
-        return list.contains(attributeName);
+    private static AttributeSession newSession(Path path) throws FileTaggerException {
+        // The backend falls back to a sidecar-file, if the filesystem does not support user-defined attributes.
+        return new AttributeSession(path, StorageBackend.getCurrent().viewOf(path));
     }
 }
\ No newline at end of file
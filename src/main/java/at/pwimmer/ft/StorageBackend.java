@@ -0,0 +1,82 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>Storage Backend</h1>
+ * <p>
+ *     Decides where the {@link FileTaggerUtils} and the {@link AttributeSession}s store the attributes of a file.
+ *     By default, the extended attributes of the filesystem are used wherever they are supported, and the
+ *     {@link SidecarAttributeView} everywhere else, in example on FAT- and exFAT-drives.
+ * </p>
+ * <p>
+ *     The backend is chosen by the system-property <code>ft.storage</code> (<code>auto</code>, <code>xattr</code>
+ *     or <code>sidecar</code>), the <code>--storage</code> option of the command-line or {@link #setCurrent}.
+ * </p>
+ * <p>
+ *     <b>Note</b>: In the automatic mode, the support of a directory is only checked once and then cached.
+ * </p>
+ */
+public enum StorageBackend {
+    /** Uses the extended attributes if the filesystem supports them, otherwise the sidecar-file. */
+    AUTO,
+    /** Only uses the extended attributes and fails on filesystems without them. */
+    XATTR,
+    /** Always uses the sidecar-file, in example to keep the tags portable between drives. */
+    SIDECAR;
+
+    private static final Map<Path, Boolean> SUPPORTED = new ConcurrentHashMap<>();
+    private static volatile StorageBackend current = valueOf(System.getProperty("ft.storage", "auto").toUpperCase(Locale.ROOT));
+
+    public static StorageBackend getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(StorageBackend backend) {
+        if(backend == null)
+            throw new IllegalArgumentException("The passed storage-backend is null!");
+        current = backend;
+    }
+
+    /**
+     * Returns the view storing the attributes of the file at the passed path in this backend.
+     * @param path The path of the file to access the attributes of.
+     * @return The view of the attributes.
+     * @throws FileTaggerException Will be thrown if only extended attributes are allowed, but not supported.
+     */
+    UserDefinedFileAttributeView viewOf(Path path) throws FileTaggerException {
+        if(this == SIDECAR)  return SidecarAttributeView.of(path);
+
+        final UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if(this == XATTR) {
+            if(view == null)
+                throw new FileTaggerException("The filesystem of '"+path+"' does not support user-defined attributes");
+            return view;
+        }
+        return view != null && isSupported(path) ? view : SidecarAttributeView.of(path);
+    }
+
+    private static boolean isSupported(Path path) {
+        final Path directory = path.toAbsolutePath().getParent();
+        if(directory == null)  return true;
+
+        // The view is also returned for some mounts without xattr-support, so ask the file-store of the directory once.
+        return SUPPORTED.computeIfAbsent(directory, dir -> {
+            try {
+                return Files.getFileStore(dir).supportsFileAttributeView(UserDefinedFileAttributeView.class);
+            }
+            catch(IOException ex) {
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package at.pwimmer.ft.async;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.packed.PackedAttribute;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Async File Tagger</h1>
+ * <p>
+ *     A non-blocking facade over the {@link FileTaggerUtils} for applications, which use the library in-process and
+ *     must not block their request-threads on attribute-syscalls. Single operations return a
+ *     {@link CompletableFuture}, a whole tree is read by the {@link Flow.Publisher} of {@link #publishTree(Path)}.
+ * </p>
+ * <p>
+ *     All operations run on the configured executor, but at most <em>maxInFlight</em> of them at the same time.
+ *     Further operations are queued without blocking the caller and started as soon as a running one has finished,
+ *     so a burst of requests can not flood the file-system with parallel syscalls.
+ *     The default executor uses virtual threads when the JVM offers them and a small daemon thread-pool otherwise.
+ * </p>
+ * <p>
+ *     <b>Note</b>: A failed operation completes its future exceptionally with the original
+ *     {@link FileTaggerException} as cause, so {@link CompletableFuture#join()} throws a {@link CompletionException}
+ *     wrapping it, while the stages of {@link CompletableFuture#exceptionally} and
+ *     {@link CompletableFuture#handle} receive it unwrapped.
+ * </p>
+ */
+public class AsyncFileTagger implements AutoCloseable {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final Semaphore permits;
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new facade with the default executor and at most 64 operations in flight.
+     */
+    public AsyncFileTagger() {
+        this(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a new facade with the default executor, which is shut down by {@link #close()}.
+     * @param maxInFlight The maximum number of operations running at the same time.
+     */
+    public AsyncFileTagger(int maxInFlight) {
+        this(newDefaultExecutor(maxInFlight), maxInFlight, true);
+    }
+
+    /**
+     * Creates a new facade running its operations on the passed executor. The executor is owned by the caller,
+     * so it will not be shut down by {@link #close()}.
+     * @param executor The executor running the blocking attribute-operations.
+     * @param maxInFlight The maximum number of operations running at the same time.
+     */
+    public AsyncFileTagger(Executor executor, int maxInFlight) {
+        this(executor, maxInFlight, false);
+    }
+
+    private AsyncFileTagger(Executor executor, int maxInFlight, boolean owned) {
+        if(executor == null)
+            throw new IllegalArgumentException("The passed executor is null!");
+        if(maxInFlight < 1)
+            throw new IllegalArgumentException("The passed maximum of in-flight operations must be at least one!");
+
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @see FileTaggerUtils#listAttributes(Path)
+     */
+    public CompletableFuture<Map<String, String>> listAttributes(Path path) {
+        return submit(() -> FileTaggerUtils.listAttributes(path));
+    }
+
+    /**
+     * @see FileTaggerUtils#hasAttribute(Path, String)
+     */
+    public CompletableFuture<Boolean> hasAttribute(Path path, String attributeName) {
+        return submit(() -> FileTaggerUtils.hasAttribute(path, attributeName));
+    }
+
+    /**
+     * @see FileTaggerUtils#readAttributeFrom(Path, String)
+     */
+    public CompletableFuture<String> readAttributeFrom(Path path, String attributeName) {
+        return submit(() -> FileTaggerUtils.readAttributeFrom(path, attributeName));
+    }
+
+    /**
+     * @see FileTaggerUtils#writeAttributeTo(Path, String, String)
+     */
+    public CompletableFuture<Boolean> writeAttributeTo(Path path, String attributeName, String attributeValue) {
+        return submit(() -> FileTaggerUtils.writeAttributeTo(path, attributeName, attributeValue));
+    }
+
+    /**
+     * @see FileTaggerUtils#readPackedAttributeFrom(Path, String)
+     */
+    public CompletableFuture<PackedAttribute> readPackedAttributeFrom(Path path, String attributeName) {
+        return submit(() -> FileTaggerUtils.readPackedAttributeFrom(path, attributeName));
+    }
+
+    /**
+     * @see FileTaggerUtils#writePackedAttributeTo(Path, String, PackedAttribute)
+     */
+    public CompletableFuture<Boolean> writePackedAttributeTo(Path path, String attributeName, PackedAttribute attribute) {
+        return submit(() -> FileTaggerUtils.writePackedAttributeTo(path, attributeName, attribute));
+    }
+
+    /**
+     * @see FileTaggerUtils#deleteAttribute(Path, String)
+     */
+    public CompletableFuture<Boolean> deleteAttribute(Path path, String attributeName) {
+        return submit(() -> FileTaggerUtils.deleteAttribute(path, attributeName));
+    }
+
+    /**
+     * Returns a publisher of all files with at least one attribute below the passed root. Every subscription walks
+     * the tree on its own and only reads as many files as it has requested, the files are read on the executor of
+     * this facade and count as one in-flight operation while a subscription is delivering.
+     * Files which could not be read are skipped, the subscription only fails if the root can not be listed.
+     * @param root The root directory of the tree to read.
+     * @return The cold publisher of the tagged files.
+     */
+    public Flow.Publisher<TaggedFile> publishTree(Path root) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+
+        return new TreePublisher(root, this::execute);
+    }
+
+    /**
+     * @return The number of operations, which are queued and wait for a free in-flight slot.
+     */
+    public int getQueuedOperations() {
+        return pending.size();
+    }
+
+    /**
+     * Shuts down the default executor, if this facade has created it. Running operations are completed.
+     */
+    @Override
+    public void close() {
+        if(ownedExecutor != null)  ownedExecutor.shutdown();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for bounding the in-flight operations and creating the default executor.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            if(future.isDone())  return;
+            try {
+                future.complete(operation.run());
+            }
+            catch(FileTaggerException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }, future::completeExceptionally);
+        return future;
+    }
+
+    private void execute(Runnable task, Consumer<? super RejectedExecutionException> rejected) {
+        pending.add(new Task(task, rejected));
+        drain();
+    }
+
+    private void drain() {
+        // Start queued tasks while there are free slots, each finished task releases its slot and drains again.
+        while(!pending.isEmpty() && permits.tryAcquire()) {
+            final Task task = pending.poll();
+            if(task == null) {
+                permits.release();
+                continue;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        permits.release();
+                        drain();
+                    }
+                });
+            }
+            catch(RejectedExecutionException ex) {
+                permits.release();
+                // The task never runs, so its owner is told instead of waiting forever.
+                task.rejected.accept(ex);
+            }
+        }
+    }
+
+    private static ExecutorService newDefaultExecutor(int maxInFlight) {
+        if(maxInFlight < 1)
+            throw new IllegalArgumentException("The passed maximum of in-flight operations must be at least one!");
+
+        // Virtual threads are looked up reflectively, so the library still runs on JVMs without them.
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException | RuntimeException ex) {
+            final int threads = Math.min(maxInFlight, Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, "file-tagger-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private interface Operation<T> {
+        T run() throws FileTaggerException;
+    }
+
+    private static final class Task implements Runnable {
+        private final Runnable task;
+        private final Consumer<? super RejectedExecutionException> rejected;
+
+        Task(Runnable task, Consumer<? super RejectedExecutionException> rejected) {
+            this.task = task;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package at.pwimmer.ft.async;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A file and its user-defined attributes, as published by {@link AsyncFileTagger#publishTree(Path)}.
+ */
+public final class TaggedFile {
+    private final Path path;
+    private final Map<String, String> attributes;
+
+    TaggedFile(Path path, Map<String, String> attributes) {
+        this.path = path;
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return path + " " + attributes;
+    }
+}
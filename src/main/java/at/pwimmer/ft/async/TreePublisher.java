@@ -0,0 +1,197 @@
+package at.pwimmer.ft.async;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Publishes every file with at least one attribute below a root directory. The tree is walked lazily, so only as
+ * many files are read as the subscriber has requested, and a slow subscriber never makes the publisher read ahead.
+ * Each subscription walks the tree on its own, the signals of one subscription are never sent concurrently.
+ * Only the draining thread touches the listed directories, so a cancelled walk is closed by the next drain.
+ * <p>
+ * Files and directories which could not be read are skipped, the stream only fails if the root can not be listed.
+ */
+final class TreePublisher implements Flow.Publisher<TaggedFile> {
+    private final Path root;
+    private final BiConsumer<Runnable, Consumer<? super RejectedExecutionException>> executor;
+
+    TreePublisher(Path root, BiConsumer<Runnable, Consumer<? super RejectedExecutionException>> executor) {
+        this.root = root;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TaggedFile> subscriber) {
+        if(subscriber == null)
+            throw new NullPointerException("The passed subscriber is null!");
+
+        final TreeSubscription subscription = new TreeSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class TreeSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super TaggedFile> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final Deque<Path> directories = new ArrayDeque<>();
+        private volatile Throwable error;
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> entries;
+        private boolean listingRoot;
+        private boolean started;
+
+        TreeSubscription(Flow.Subscriber<? super TaggedFile> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                error = new IllegalArgumentException("The requested number of files must be positive, but was "+n);
+                schedule();
+                return;
+            }
+
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            // The stream is only touched by the draining thread, so it is closed by the next drain.
+            if(done.compareAndSet(false, true))  schedule();
+        }
+
+        private void schedule() {
+            // Only one drain runs at a time, further signals are picked up by the running one.
+            // A rejected drain never runs, so no other thread touches the stream and the error is sent right away.
+            if(pending.getAndIncrement() == 0)  executor.accept(this::drain, this::fail);
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    while(error == null && !done.get() && demand.get() > 0) {
+                        final TaggedFile next = next();
+                        if(next == null) {
+                            if(done.compareAndSet(false, true))  subscriber.onComplete();
+                            return;
+                        }
+                        demand.decrementAndGet();
+                        subscriber.onNext(next);
+                    }
+                }
+                catch(IOException | RuntimeException ex) {
+                    fail(ex);
+                    return;
+                }
+
+                if(error != null) {
+                    fail(error);
+                    return;
+                }
+                if(done.get()) {
+                    closeStream();
+                    return;
+                }
+                missed = pending.addAndGet(-missed);
+            }
+            while(missed != 0);
+        }
+
+        private TaggedFile next() throws IOException {
+            if(!started) {
+                started = true;
+                open(root, true);
+            }
+
+            while(entries != null) {
+                Path entry;
+                while((entry = nextEntry()) != null) {
+                    final BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    }
+                    catch(IOException ex) {
+                        continue;
+                    }
+
+                    if(attrs.isDirectory())  directories.push(entry);
+                    else if(attrs.isRegularFile() && !SidecarAttributeView.isSidecar(entry)) {
+                        try {
+                            final Map<String, String> attributes = FileTaggerUtils.openSession(entry).readAll();
+                            if(!attributes.isEmpty())  return new TaggedFile(entry, attributes);
+                        }
+                        catch(FileTaggerException | RuntimeException ex) {
+                            // The file could not be read, so skip it like a file without attributes.
+                        }
+                    }
+                }
+
+                closeStream();
+                while(entries == null && !directories.isEmpty())  open(directories.pop(), false);
+            }
+            return null;
+        }
+
+        private Path nextEntry() throws IOException {
+            try {
+                return entries.hasNext() ? entries.next() : null;
+            }
+            catch(DirectoryIteratorException ex) {
+                // A sub-directory which fails while being listed is skipped like one which could not be opened.
+                if(listingRoot)  throw ex.getCause();
+                return null;
+            }
+        }
+
+        private void open(Path directory, boolean root) throws IOException {
+            try {
+                stream = Files.newDirectoryStream(directory);
+                entries = stream.iterator();
+                listingRoot = root;
+            }
+            catch(IOException ex) {
+                if(root)  throw ex;
+            }
+        }
+
+        private void closeStream() {
+            try {
+                if(stream != null)  stream.close();
+            }
+            catch(IOException ex) {
+                // Closing a listed directory only releases its handle, so there is nothing to recover.
+            }
+            stream = null;
+            entries = null;
+        }
+
+        private void fail(Throwable throwable) {
+            closeStream();
+            if(done.compareAndSet(false, true))  subscriber.onError(throwable);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package at.pwimmer.ft.bulk;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+/**
+ * Thrown by a {@link BulkTagger} if the manifest could not be read to its end. All operations read before the
+ * failing line have been applied, their summary is returned by {@link #getResult()}.
+ */
+public class BulkAbortedException extends FileTaggerException {
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+    private final transient BulkResult result;
+
+    BulkAbortedException(FileTaggerException cause, int lineNumber, BulkResult result) {
+        super(cause.getMessage(), cause);
+        this.lineNumber = lineNumber;
+        this.result = result;
+    }
+
+    /**
+     * @return The line of the manifest, which could not be read or is malformed.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return The summary of the operations applied before the failing line.
+     */
+    public BulkResult getResult() {
+        return result;
+    }
+}
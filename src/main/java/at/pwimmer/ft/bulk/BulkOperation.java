@@ -0,0 +1,45 @@
+package at.pwimmer.ft.bulk;
+
+import java.nio.file.Path;
+
+/**
+ * A single line of a bulk-manifest, which either writes the value of an attribute to a file or deletes the
+ * attribute from it. An operation without a value is a delete-operation.
+ */
+public class BulkOperation {
+    private final Path path;
+    private final String attributeName;
+    private final String attributeValue;
+
+    public BulkOperation(Path path, String attributeName, String attributeValue) {
+        if(path == null)
+            throw new IllegalArgumentException("The passed path is null!");
+        if(attributeName == null || attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is null or blank!");
+
+        this.path = path;
+        this.attributeName = attributeName;
+        this.attributeValue = attributeValue == null || attributeValue.isEmpty() ? null : attributeValue;
+    }
+
+    public boolean isDelete() {
+        return attributeValue == null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    public String getAttributeValue() {
+        return attributeValue;
+    }
+
+    @Override
+    public String toString() {
+        return isDelete() ? "delete '"+attributeName+"' from '"+path+"'" : "write '"+attributeName+": "+attributeValue+"' to '"+path+"'";
+    }
+}
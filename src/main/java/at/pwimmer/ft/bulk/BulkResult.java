@@ -0,0 +1,82 @@
+package at.pwimmer.ft.bulk;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The aggregated summary of a {@link BulkTagger} run. It counts the processed files and operations
+ * and collects the error-messages of all failed operations per file.
+ * <p>
+ * All methods are thread-safe, because the counters are updated concurrently by the tagging workers.
+ */
+public class BulkResult {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+    private final Map<Path, List<String>> failures = new ConcurrentHashMap<>();
+
+    void fileProcessed() {
+        files.increment();
+    }
+
+    void written() {
+        written.increment();
+    }
+
+    void deleted(boolean existed) {
+        if(existed)  deleted.increment();
+        else  missing.increment();
+    }
+
+    void failed(Path path, String message) {
+        failures.computeIfAbsent(path, p -> Collections.synchronizedList(new ArrayList<>())).add(message);
+    }
+
+    /**
+     * @return The number of distinct file-groups, which have been processed.
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return The number of successfully written attributes.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * @return The number of successfully deleted attributes.
+     */
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    /**
+     * @return The number of delete-operations, whose attribute has not been set on the file.
+     */
+    public long getMissing() {
+        return missing.sum();
+    }
+
+    /**
+     * @return The number of failed operations over all files.
+     */
+    public long getFailedOperations() {
+        return failures.values().stream().mapToLong(List::size).sum();
+    }
+
+    /**
+     * @return An unmodifiable map of each file with at least one failed operation and the error-messages.
+     */
+    public Map<Path, List<String>> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+}
@@ -0,0 +1,198 @@
+package at.pwimmer.ft.bulk;
+
+import at.pwimmer.ft.AttributeSession;
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Bulk Tagger</h1>
+ * <p>
+ *     Applies the write- and delete-operations of a {@link ManifestReader} to many files in parallel.
+ *     The manifest is read by the calling thread, while the workers already apply the previously read operations.
+ *     Consecutive operations on the same file are grouped and applied within one {@link AttributeSession},
+ *     so tagging a movie with several attributes only opens and lists it once.
+ * </p>
+ * <p>
+ *     Each file is assigned to one worker by the hash of its path, so all operations on a file are applied in the
+ *     order of the manifest, even if they are not adjacent.
+ * </p>
+ * <p>
+ *     The number of file-groups waiting for a worker is bounded, so the reader is slowed down instead of
+ *     buffering a whole manifest in memory. A failed operation never aborts the run, it is collected by the
+ *     returned {@link BulkResult} instead.
+ * </p>
+ */
+public class BulkTagger {
+    private final int parallelism;
+
+    /**
+     * Creates a new bulk-tagger, which uses all available processors.
+     */
+    public BulkTagger() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new bulk-tagger with the passed concurrency-limit.
+     * @param parallelism The maximum number of files tagged concurrently, must be at least one.
+     */
+    public BulkTagger(int parallelism) {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("The passed parallelism must be at least one!");
+
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads all operations of the passed manifest and applies them in parallel.
+     * <p>
+     * If the manifest itself is malformed, all operations read before the failing line are completed before the
+     * {@link BulkAbortedException} is thrown, so the files are never left in an unknown state and its summary
+     * tells what has been applied.
+     * @param manifest The manifest to read the operations from.
+     * @return The aggregated summary of all applied operations.
+     * @throws BulkAbortedException Will be thrown if the manifest could not be read to its end.
+     */
+    public BulkResult apply(ManifestReader manifest) throws FileTaggerException {
+        if(manifest == null)
+            throw new IllegalArgumentException("The passed manifest is null!");
+
+        final BulkResult result = new BulkResult();
+        final ExecutorService[] lanes = newLanes();
+        final Semaphore inFlight = new Semaphore(parallelism * 4);
+
+        FileTaggerException error = null;
+        try {
+            List<BulkOperation> group = new ArrayList<>();
+            try {
+                BulkOperation operation;
+                while((operation = manifest.next()) != null) {
+                    if(!group.isEmpty() && !group.get(0).getPath().equals(operation.getPath())) {
+                        submit(lanes, inFlight, group, result);
+                        group = new ArrayList<>();
+                    }
+                    group.add(operation);
+                }
+            }
+            catch(FileTaggerException ex) {
+                // The lines before the failing one are valid, so their operations are still applied.
+                error = ex;
+            }
+            if(!group.isEmpty())  submit(lanes, inFlight, group, result);
+        }
+        finally {
+            awaitTermination(lanes);
+        }
+
+        if(error != null)  throw new BulkAbortedException(error, manifest.getLineNumber(), result);
+        return result;
+    }
+
+    /**
+     * Applies the passed operations in parallel, see {@link #apply(ManifestReader)}.
+     * @param operations The operations to apply, operations on the same file should be adjacent.
+     * @return The aggregated summary of all applied operations.
+     */
+    public BulkResult apply(List<BulkOperation> operations) {
+        final BulkResult result = new BulkResult();
+        final ExecutorService[] lanes = newLanes();
+        final Semaphore inFlight = new Semaphore(parallelism * 4);
+
+        try {
+            int from = 0;
+            for(int i = 1; i <= operations.size(); i++) {
+                if(i == operations.size() || !operations.get(i).getPath().equals(operations.get(from).getPath())) {
+                    submit(lanes, inFlight, operations.subList(from, i), result);
+                    from = i;
+                }
+            }
+        }
+        finally {
+            awaitTermination(lanes);
+        }
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for submitting and applying the grouped operations.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private ExecutorService[] newLanes() {
+        final ExecutorService[] lanes = new ExecutorService[parallelism];
+        for(int i = 0; i < parallelism; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "file-tagger-bulk");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return lanes;
+    }
+
+    private void submit(ExecutorService[] lanes, Semaphore inFlight, List<BulkOperation> group, BulkResult result) {
+        // Every group of a path runs on the same single-threaded lane, so the groups of a file never overlap.
+        final ExecutorService lane = lanes[Math.floorMod(group.get(0).getPath().hashCode(), lanes.length)];
+        inFlight.acquireUninterruptibly();
+        lane.execute(() -> {
+            try {
+                applyGroup(group, result);
+            }
+            finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static void applyGroup(List<BulkOperation> group, BulkResult result) {
+        final AttributeSession session;
+        try {
+            session = FileTaggerUtils.openSession(group.get(0).getPath());
+        }
+        catch(FileTaggerException | RuntimeException ex) {
+            // Without a session, none of the operations on this file can be applied.
+            for(BulkOperation operation : group)
+                result.failed(operation.getPath(), "Could not "+operation+": "+ex.getMessage());
+            result.fileProcessed();
+            return;
+        }
+
+        for(BulkOperation operation : group) {
+            try {
+                if(operation.isDelete()) {
+                    result.deleted(session.delete(operation.getAttributeName()));
+                }
+                else {
+                    session.write(operation.getAttributeName(), operation.getAttributeValue());
+                    result.written();
+                }
+            }
+            catch(FileTaggerException | RuntimeException ex) {
+                result.failed(operation.getPath(), "Could not "+operation+": "+ex.getMessage());
+            }
+        }
+        result.fileProcessed();
+    }
+
+    private static void awaitTermination(ExecutorService[] lanes) {
+        for(ExecutorService lane : lanes)  lane.shutdown();
+        try {
+            for(ExecutorService lane : lanes) {
+                while(!lane.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // Keep waiting, a huge manifest on a slow drive may take longer than one minute.
+                }
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package at.pwimmer.ft.bulk;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <h1>Manifest Reader</h1>
+ * <p>
+ *     Streams the {@link BulkOperation}s of a bulk-manifest line by line, so even huge manifests never have to be
+ *     held in memory. Two formats are supported:
+ * </p>
+ * <ul>
+ *     <li><b>CSV</b>: <code>path,name,value</code> per line, fields may be quoted with <code>"</code> and quotes
+ *     are escaped by doubling them. A row without a value deletes the attribute. An optional header-row
+ *     <code>path,name,value</code>, empty lines and lines starting with <code>#</code> are skipped.</li>
+ *     <li><b>NDJSON</b>: one flat JSON-object per line with the string-fields <code>path</code>, <code>name</code>
+ *     and <code>value</code>. A missing or <code>null</code> value deletes the attribute.</li>
+ * </ul>
+ */
+public class ManifestReader implements AutoCloseable {
+
+    public enum Format {
+        CSV, NDJSON;
+
+        /**
+         * Detects the format by the file-extension of the passed manifest, everything except
+         * <code>.ndjson</code> and <code>.jsonl</code> is treated as CSV.
+         */
+        public static Format of(Path manifest) {
+            final String name = manifest.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".ndjson") || name.endsWith(".jsonl") ? NDJSON : CSV;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private int lineNumber;
+
+    public ManifestReader(Reader reader, Format format) {
+        if(reader == null || format == null)
+            throw new IllegalArgumentException("The passed reader or format is null!");
+
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        this.format = format;
+    }
+
+    /**
+     * Reads the next operation of the manifest.
+     * @return The next operation, or <code>null</code> if the end of the manifest has been reached.
+     * @throws FileTaggerException Will be thrown if the manifest could not be read or a line is malformed.
+     */
+    public BulkOperation next() throws FileTaggerException {
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                if(line.isBlank() || line.startsWith("#"))  continue;
+
+                final BulkOperation operation = format == Format.CSV ? parseCsv(line) : parseJson(line);
+                if(operation != null)  return operation;
+            }
+            return null;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read the manifest at line "+lineNumber, ex);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new FileTaggerException("Malformed manifest at line "+lineNumber+": "+ex.getMessage());
+        }
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for parsing the CSV- and NDJSON-lines.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private BulkOperation parseCsv(String line) {
+        final List<String> fields = new ArrayList<>(3);
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if(quoted) {
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else if(c == '"')  quoted = false;
+                else  field.append(c);
+            }
+            else if(c == '"')  quoted = true;
+            else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else  field.append(c);
+        }
+        if(quoted)
+            throw new IllegalArgumentException("unterminated quoted field");
+        fields.add(field.toString());
+
+        if(fields.size() < 2 || fields.size() > 3)
+            throw new IllegalArgumentException("expected 'path,name[,value]' but found "+fields.size()+" fields");
+
+        // Skip the optional header-row.
+        if(lineNumber == 1 && fields.get(0).equals("path") && fields.get(1).equals("name"))  return null;
+
+        return new BulkOperation(Path.of(fields.get(0)), fields.get(1), fields.size() == 3 ? fields.get(2) : null);
+    }
+
+    private BulkOperation parseJson(String line) {
+        final Map<String, String> fields = new JsonObjectParser(line).parse();
+        final String path = fields.get("path");
+        if(path == null || path.isEmpty())
+            throw new IllegalArgumentException("missing field 'path'");
+
+        return new BulkOperation(Path.of(path), fields.get("name"), fields.get("value"));
+    }
+
+    /**
+     * A minimal parser for flat JSON-objects, nested objects and arrays are not supported.
+     * Numbers and booleans are returned as their literal text.
+     */
+    private static class JsonObjectParser {
+        private final String json;
+        private int pos;
+
+        JsonObjectParser(String json) {
+            this.json = json;
+        }
+
+        Map<String, String> parse() {
+            final Map<String, String> fields = new HashMap<>();
+            expect('{');
+            if(peek() == '}')  return fields;
+
+            do {
+                final String key = parseString();
+                expect(':');
+                fields.put(key, parseValue());
+            }
+            while(consume(','));
+
+            expect('}');
+            if(peek() != 0)
+                throw new IllegalArgumentException("unexpected content after the JSON-object");
+            return fields;
+        }
+
+        private String parseValue() {
+            final char c = peek();
+            if(c == '"')  return parseString();
+
+            final int start = pos;
+            while(pos < json.length() && ",} \t".indexOf(json.charAt(pos)) < 0)  pos++;
+
+            final String literal = json.substring(start, pos);
+            if(literal.isEmpty() || c == '{' || c == '[')
+                throw new IllegalArgumentException("unsupported JSON-value at column "+(start + 1));
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String parseString() {
+            expect('"');
+            final StringBuilder sb = new StringBuilder();
+            while(pos < json.length()) {
+                final char c = json.charAt(pos++);
+                if(c == '"')  return sb.toString();
+                if(c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+
+                if(pos >= json.length())  break;
+                final char escaped = json.charAt(pos++);
+                switch(escaped) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if(pos + 4 > json.length())
+                            throw new IllegalArgumentException("invalid unicode-escape at column "+pos);
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("unterminated JSON-string");
+        }
+
+        private char peek() {
+            while(pos < json.length() && Character.isWhitespace(json.charAt(pos)))  pos++;
+            return pos < json.length() ? json.charAt(pos) : 0;
+        }
+
+        private boolean consume(char c) {
+            if(peek() != c)  return false;
+            pos++;
+            return true;
+        }
+
+        private void expect(char c) {
+            if(!consume(c))
+                throw new IllegalArgumentException("expected '"+c+"' at column "+(pos + 1));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package at.pwimmer.ft.commands;
 
+import at.pwimmer.ft.daemon.TaggerClient;
 import at.pwimmer.ft.exceptions.FileTaggerException;
 import at.pwimmer.ft.FileTaggerUtils;
 import picocli.CommandLine;
@@ -17,22 +18,33 @@ public class AttributeDeleteCommand implements Callable<Integer> {
     @CommandLine.Option(names = {"-an", "--attribute-name"}, required = true, description = "The name of the attribute to set")
     private String attributeName;
 
+    @CommandLine.ParentCommand
+    private TaggerCommand parent;
+
     @Override
     public Integer call() throws Exception {
-        targets.forEach(path -> {
-            try {
-                final boolean success = FileTaggerUtils.deleteAttribute(path, attributeName);
-                if(success) {
-                    System.out.println("Deleted attribute '"+attributeName+"' from '" + path + "'");
+        try(TaggerClient client = parent.connect()) {
+            for(Path path : targets) {
+                try {
+                    final boolean success = client != null
+                            ? client.deleteAttribute(path, attributeName)
+                            : FileTaggerUtils.deleteAttribute(path, attributeName);
+                    if(success) {
+                        System.out.println("Deleted attribute '"+attributeName+"' from '" + path + "'");
+                    }
+                    else {
+                        System.err.println("File at '" + path + "' did not have any attribute like '" + attributeName + "' set");
+                    }
                 }
-                else {
-                    System.err.println("File at '" + path + "' did not have any attribute like '" + attributeName + "' set");
+                catch(FileTaggerException ex) {
+                    System.err.println(ex.getMessage());
                 }
             }
-            catch(FileTaggerException ex) {
-                System.err.println(ex.getMessage());
-            }
-        });
+        }
+        catch(FileTaggerException ex) {
+            // Will be thrown if the daemon could not be reached.
+            System.err.println(ex.getMessage());
+        }
 
         return 41;
     }
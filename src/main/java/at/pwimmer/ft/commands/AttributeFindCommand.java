@@ -0,0 +1,81 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.daemon.TaggerClient;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.AttributeIndex;
+import at.pwimmer.ft.scan.ScanResult;
+import at.pwimmer.ft.scan.TreeScanner;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "find", description = "Finds all files with the specified attribute-value using a prebuilt index or a scan")
+public class AttributeFindCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The attribute-value to search for, in example the UUID of a movie")
+    private String attributeValue;
+
+    @CommandLine.Option(names = {"-i", "--index"}, defaultValue = "file-tagger.idx", description = "The index-file created by the 'index' command (default: ${DEFAULT-VALUE})")
+    private Path indexFile;
+
+    @CommandLine.Option(names = {"-s", "--scan"}, description = "Scans this root directory instead of using the index")
+    private Path scanRoot;
+
+    @CommandLine.Option(names = {"-an", "--attribute-name"}, defaultValue = "uuid", description = "The name of the attribute to match when scanning (default: ${DEFAULT-VALUE})")
+    private String attributeName;
+
+    @CommandLine.ParentCommand
+    private TaggerCommand parent;
+
+    @Override
+    public Integer call() throws Exception {
+        if(scanRoot != null)  return scan();
+        if(parent.getSocket() != null)  return forward();
+
+        try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+            final List<Path> paths = index.find(attributeValue);
+            if(paths.isEmpty()) {
+                System.err.println("No file with '" + index.getAttributeName() + ": " + attributeValue + "' found in index '" + indexFile + "'");
+                return 53;
+            }
+
+            paths.forEach(System.out::println);
+            return 51;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 52;
+        }
+    }
+
+    private int forward() {
+        try(TaggerClient client = parent.connect()) {
+            final List<Path> paths = client.find(indexFile, attributeValue);
+            if(paths.isEmpty()) {
+                System.err.println("No file with value '" + attributeValue + "' found in index '" + indexFile + "'");
+                return 53;
+            }
+
+            paths.forEach(System.out::println);
+            return 51;
+        }
+        catch(FileTaggerException | IOException ex) {
+            System.err.println(ex.getMessage());
+            return 52;
+        }
+    }
+
+    private int scan() {
+        final ScanResult result = new TreeScanner().find(scanRoot, attributeName, attributeValue, System.out::println);
+        result.getFailures().forEach((path, message) -> System.err.println(message));
+
+        if(result.getTaggedFiles() == 0) {
+            System.err.println("No file with '" + attributeName + ": " + attributeValue + "' found below '" + scanRoot + "'");
+            return 53;
+        }
+        return 51;
+    }
+}
@@ -0,0 +1,167 @@
+package at.pwimmer.ft.commands;
+
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the attributes of many files as machine-readable records through one large buffer, which is only flushed
+ * when it is full or the command has finished. Errors are written as records of the same format to the separate
+ * error-stream, so they never mix with the results.
+ * <ul>
+ *     <li><b>TSV</b>: one line <code>path TAB name TAB value</code> per attribute, tabs, line-breaks and
+ *     backslashes within the fields are escaped as <code>\t</code>, <code>\n</code>, <code>\r</code> and
+ *     <code>\\</code>. An error is written as <code>path TAB message</code>.</li>
+ *     <li><b>NDJSON</b>: one object <code>{"path":"a.mp4","attributes":{"uuid":"1234"}}</code> per file, also for
+ *     files without attributes. An error is written as <code>{"path":"a.mp4","error":"message"}</code>.</li>
+ *     <li><b>NULL-DELIMITED</b>: the fields <code>path</code>, <code>name</code> and <code>value</code> of each
+ *     attribute, each terminated by a NUL-character like <code>find -print0</code>, so nothing is escaped.
+ *     An error is written as <code>path</code> and <code>message</code>.</li>
+ * </ul>
+ */
+final class AttributeOutput {
+    private final Format format;
+    private final Writer out;
+    private final PrintStream err;
+
+    enum Format {
+        TSV, NDJSON, NULL_DELIMITED
+    }
+
+    AttributeOutput(Format format, OutputStream out, PrintStream err) {
+        this.format = format;
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.err = err;
+    }
+
+    void file(Path path, Map<String, String> attributes) throws IOException {
+        final String file = path.toString();
+        switch(format) {
+            case TSV:
+                for(Map.Entry<String, String> entry : attributes.entrySet()) {
+                    tsv(out, file);
+                    out.write('\t');
+                    tsv(out, entry.getKey());
+                    out.write('\t');
+                    tsv(out, entry.getValue());
+                    out.write('\n');
+                }
+                break;
+            case NDJSON:
+                out.write("{\"path\":");
+                json(out, file);
+                out.write(",\"attributes\":{");
+                boolean first = true;
+                for(Map.Entry<String, String> entry : attributes.entrySet()) {
+                    if(!first)  out.write(',');
+                    json(out, entry.getKey());
+                    out.write(':');
+                    json(out, entry.getValue());
+                    first = false;
+                }
+                out.write("}}\n");
+                break;
+            case NULL_DELIMITED:
+                for(Map.Entry<String, String> entry : attributes.entrySet()) {
+                    out.write(file);
+                    out.write('\0');
+                    out.write(entry.getKey());
+                    out.write('\0');
+                    out.write(entry.getValue());
+                    out.write('\0');
+                }
+                break;
+        }
+    }
+
+    void error(Path path, String message) throws IOException {
+        // Errors are rare, so each one is built completely and printed at once to the unbuffered error-stream.
+        final StringBuilder builder = new StringBuilder();
+        final String text = String.valueOf(message);
+        switch(format) {
+            case TSV:
+                tsv(builder, path.toString());
+                builder.append('\t');
+                tsv(builder, text);
+                builder.append('\n');
+                break;
+            case NDJSON:
+                builder.append("{\"path\":");
+                json(builder, path.toString());
+                builder.append(",\"error\":");
+                json(builder, text);
+                builder.append("}\n");
+                break;
+            case NULL_DELIMITED:
+                builder.append(path).append('\0').append(text).append('\0');
+                break;
+        }
+        err.print(builder);
+    }
+
+    void flush() throws IOException {
+        out.flush();
+        err.flush();
+    }
+
+    /**
+     * Converts the names of the formats, so they can be passed like <code>--format=null-delimited</code>.
+     */
+    static final class FormatConverter implements CommandLine.ITypeConverter<Format> {
+        @Override
+        public Format convert(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            }
+            catch(IllegalArgumentException ex) {
+                throw new CommandLine.TypeConversionException("Unknown format '"+value+"', expected tsv, ndjson or null-delimited");
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for escaping the fields.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static void tsv(Appendable out, String value) throws IOException {
+        for(int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch(c) {
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\\': out.append("\\\\"); break;
+                default:   out.append(c);
+            }
+        }
+    }
+
+    private static void json(Appendable out, String value) throws IOException {
+        out.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch(c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if(c < 0x20)  out.append(String.format("\\u%04x", (int) c));
+                    else  out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
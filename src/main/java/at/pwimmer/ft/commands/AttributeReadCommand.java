@@ -1,9 +1,13 @@
 package at.pwimmer.ft.commands;
 
+import at.pwimmer.ft.daemon.TaggerClient;
 import at.pwimmer.ft.exceptions.FileTaggerException;
 import at.pwimmer.ft.FileTaggerUtils;
 import picocli.CommandLine;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -17,20 +21,27 @@ public class AttributeReadCommand implements Callable<Integer> {
     @CommandLine.Option(names = {"-an", "--attribute-name"}, arity = "0..1", description = "The name of a specific attribute to read only")
     private String attributeName;
 
+    @CommandLine.Option(names = {"--format"}, converter = AttributeOutput.FormatConverter.class, description = "Prints the attributes of all targets as tsv, ndjson or null-delimited records instead of the readable text")
+    private AttributeOutput.Format format;
+
+    @CommandLine.ParentCommand
+    private TaggerCommand parent;
+
     @Override
     public Integer call() throws Exception {
-        try {
+        try(TaggerClient client = parent.connect()) {
+            if(format != null)  return readAll(client);
             if(targets.size() > 1)  return 23;
             final Path target = targets.get(0);
 
             System.out.println("Target File: " + target);
             System.out.println("----------------------------");
             if(attributeName == null) {
-                final Map<String, String> map = FileTaggerUtils.listAttributes(target);
+                final Map<String, String> map = client != null ? client.listAttributes(target) : FileTaggerUtils.listAttributes(target);
                 map.forEach(this::outputAttribute);
             }
             else {
-                final String result = FileTaggerUtils.readAttributeFrom(target, attributeName);
+                final String result = client != null ? client.readAttributeFrom(target, attributeName) : FileTaggerUtils.readAttributeFrom(target, attributeName);
                 outputAttribute(attributeName, result);
             }
 
@@ -42,6 +53,31 @@ public class AttributeReadCommand implements Callable<Integer> {
         }
     }
 
+    private int readAll(TaggerClient client) throws IOException {
+        // Only flushed when the buffer is full, so the records are written in large blocks instead of line by line.
+        // System.out flushes every write itself, so write to the file-descriptor directly, which is never closed.
+        final AttributeOutput output = new AttributeOutput(format, new FileOutputStream(FileDescriptor.out), System.err);
+        int failures = 0;
+        try {
+            for(Path target : targets) {
+                try {
+                    final Map<String, String> map;
+                    if(attributeName == null)  map = client != null ? client.listAttributes(target) : FileTaggerUtils.listAttributes(target);
+                    else  map = Map.of(attributeName, client != null ? client.readAttributeFrom(target, attributeName) : FileTaggerUtils.readAttributeFrom(target, attributeName));
+                    output.file(target, map);
+                }
+                catch(FileTaggerException | IllegalArgumentException ex) {
+                    output.error(target, ex.getMessage());
+                    failures++;
+                }
+            }
+        }
+        finally {
+            output.flush();
+        }
+        return failures == 0 ? 21 : 22;
+    }
+
     private void outputAttribute(String attributeName, String result) {
         System.out.println("Attribute-Name  : " + attributeName);
         System.out.println("Attribute-Value : " + result);
@@ -1,5 +1,6 @@
 package at.pwimmer.ft.commands;
 
+import at.pwimmer.ft.daemon.TaggerClient;
 import at.pwimmer.ft.exceptions.FileTaggerException;
 import at.pwimmer.ft.FileTaggerUtils;
 import picocli.CommandLine;
@@ -19,13 +20,18 @@ public class AttributeWriteCommand implements Callable<Integer> {
         @CommandLine.Option(names = {"-av", "--attribute-value"}, description = "The value of the attribute to set")
         private String attributeValue;
 
+        @CommandLine.ParentCommand
+        private TaggerCommand parent;
+
         @Override
         public Integer call() throws Exception {
-            try {
+            try(TaggerClient client = parent.connect()) {
                 if(targets.size() > 1)  return 34;
 
                 final Path target = targets.get(0);
-                final boolean success = FileTaggerUtils.writeAttributeTo(target, attributeName, attributeValue);
+                final boolean success = client != null
+                        ? client.writeAttributeTo(target, attributeName, attributeValue)
+                        : FileTaggerUtils.writeAttributeTo(target, attributeName, attributeValue);
 
                 if(success) {
                     System.out.println("Added tag '"+ attributeName + ": " + attributeValue +"' to file '" + target + "'");
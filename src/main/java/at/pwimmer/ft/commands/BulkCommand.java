@@ -0,0 +1,59 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.bulk.BulkAbortedException;
+import at.pwimmer.ft.bulk.BulkResult;
+import at.pwimmer.ft.bulk.BulkTagger;
+import at.pwimmer.ft.bulk.ManifestReader;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "bulk", description = "Applies the writes and deletes of a CSV- or NDJSON-manifest in parallel")
+public class BulkCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "0..1", description = "The manifest with 'path,name,value' per line, reads from stdin if omitted or '-'")
+    private Path manifest;
+
+    @CommandLine.Option(names = {"--format"}, description = "The manifest format CSV or NDJSON (default: by file-extension, CSV for stdin)")
+    private ManifestReader.Format format;
+
+    @CommandLine.Option(names = {"-p", "--parallelism"}, description = "The maximum number of files tagged concurrently (default: number of processors)")
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public Integer call() throws Exception {
+        final boolean stdin = manifest == null || manifest.toString().equals("-");
+        final ManifestReader.Format manifestFormat = format != null ? format : stdin ? ManifestReader.Format.CSV : ManifestReader.Format.of(manifest);
+
+        try(Reader reader = stdin ? new InputStreamReader(System.in, StandardCharsets.UTF_8) : Files.newBufferedReader(manifest);
+            ManifestReader manifestReader = new ManifestReader(reader, manifestFormat)) {
+            final BulkResult result = new BulkTagger(parallelism).apply(manifestReader);
+
+            printSummary(result);
+            return result.getFailures().isEmpty() ? 81 : 82;
+        }
+        catch(BulkAbortedException ex) {
+            // The lines before the failing one have been applied, so report them like a complete run.
+            printSummary(ex.getResult());
+            System.err.println(ex.getMessage());
+            return 83;
+        }
+        catch(FileTaggerException | IOException ex) {
+            System.err.println(ex.getMessage());
+            return 83;
+        }
+    }
+
+    private static void printSummary(BulkResult result) {
+        result.getFailures().forEach((path, messages) -> messages.forEach(System.err::println));
+        System.out.println("Tagged " + result.getFiles() + " files: " + result.getWritten() + " written, "
+                + result.getDeleted() + " deleted, " + result.getMissing() + " not set, " + result.getFailedOperations() + " failed");
+    }
+}
@@ -0,0 +1,71 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.export.ExportResult;
+import at.pwimmer.ft.export.ExportWriter;
+import at.pwimmer.ft.export.TagExporter;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "export", description = "Streams the path, file-key and attributes of all tagged files below the root directory")
+public class ExportCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The root directory to export")
+    private Path root;
+
+    @CommandLine.Option(names = {"--format"}, defaultValue = "NDJSON", description = "The output format NDJSON or BINARY (default: ${DEFAULT-VALUE})")
+    private ExportWriter.Format format;
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "The file to write the export to (default: stdout)")
+    private Path output;
+
+    @CommandLine.Option(names = {"-c", "--checkpoint"}, description = "Exports incrementally, only files changed since the run which wrote this checkpoint-file")
+    private Path checkpoint;
+
+    @Override
+    public Integer call() throws Exception {
+        try(OutputStream stream = output == null ? new UnclosableOutputStream() : Files.newOutputStream(output);
+            ExportWriter writer = ExportWriter.of(format, stream)) {
+            final ExportResult result = new TagExporter(root, checkpoint).export(writer);
+
+            result.getFailures().forEach((path, message) -> System.err.println(message));
+            System.err.println("Exported " + result.getExported() + " files and " + result.getRemoved() + " removals, read "
+                    + result.getReadFiles() + " of " + result.getFiles() + " files, " + result.getFailures().size() + " failed");
+            return result.getFailures().isEmpty() ? 121 : 122;
+        }
+        catch(FileTaggerException | IOException ex) {
+            System.err.println(ex.getMessage());
+            return 123;
+        }
+    }
+
+    /**
+     * Writes to stdout, but only flushes it on close, so stdout stays open for the summary of the command.
+     */
+    private static class UnclosableOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            System.out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+
+        @Override
+        public void close() {
+            System.out.flush();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.fingerprint.FingerprintResult;
+import at.pwimmer.ft.fingerprint.Fingerprinter;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "fingerprint", description = "Stores content-fingerprints of all files with a UUID and re-attaches lost UUIDs by their fingerprint")
+public class FingerprintCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The root directory of the library")
+    private Path root;
+
+    @CommandLine.Option(names = {"-an", "--attribute-name"}, defaultValue = "uuid", description = "The name of the attribute holding the UUID (default: ${DEFAULT-VALUE})")
+    private String attributeName;
+
+    @CommandLine.Option(names = {"-c", "--catalog"}, defaultValue = "file-tagger.fingerprints", description = "The catalog of fingerprints and their UUIDs (default: ${DEFAULT-VALUE})")
+    private Path catalog;
+
+    @CommandLine.Option(names = {"-p", "--parallelism"}, description = "The maximum number of files processed concurrently (default: number of processors)")
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public Integer call() throws Exception {
+        try {
+            final FingerprintResult result = new Fingerprinter(attributeName, catalog, parallelism).run(root);
+
+            result.getFailures().forEach((path, message) -> System.err.println(message));
+            System.out.println("Visited " + result.getFiles() + " files: " + result.getFingerprinted() + " fingerprinted, "
+                    + result.getReattached() + " re-attached, " + result.getAmbiguous() + " ambiguous, " + result.getFailures().size() + " failed");
+            return result.getFailures().isEmpty() ? 131 : 132;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 133;
+        }
+    }
+}
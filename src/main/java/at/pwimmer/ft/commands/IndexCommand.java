@@ -0,0 +1,45 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.AttributeIndex;
+import at.pwimmer.ft.index.IndexWatcher;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "index", description = "Walks the root directory and builds the index used by the 'find' command")
+public class IndexCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The root directory to walk")
+    private Path root;
+
+    @CommandLine.Option(names = {"-an", "--attribute-name"}, defaultValue = "uuid", description = "The name of the attribute to index (default: ${DEFAULT-VALUE})")
+    private String attributeName;
+
+    @CommandLine.Option(names = {"-i", "--index"}, defaultValue = "file-tagger.idx", description = "The index-file to create (default: ${DEFAULT-VALUE})")
+    private Path indexFile;
+
+    @CommandLine.Option(names = {"-u", "--update"}, description = "Updates the existing index and only re-reads new or changed files")
+    private boolean update;
+
+    @Override
+    public Integer call() throws Exception {
+        try {
+            if(update) {
+                final IndexWatcher watcher = new IndexWatcher(root, attributeName, indexFile);
+                final int changed = watcher.catchUp();
+                System.out.println("Updated index '" + indexFile + "', re-read " + changed + " of " + watcher.getKnownFiles() + " files below '" + root + "'");
+                return 61;
+            }
+
+            final int count = AttributeIndex.build(root, attributeName, indexFile);
+            System.out.println("Indexed attribute '" + attributeName + "' of " + count + " files below '" + root + "' into '" + indexFile + "'");
+            return 61;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 62;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.TagIndex;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "query", description = "Finds all files matching a boolean query like 'category=action AND NOT watched=true' using the tag-index")
+public class QueryCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "0..1", description = "The query with name=value terms, prefixes like 'actor=Tom*' and AND/OR/NOT/parentheses")
+    private String query;
+
+    @CommandLine.Option(names = {"-i", "--index"}, defaultValue = "file-tagger.tagidx", description = "The tag-index to query (default: ${DEFAULT-VALUE})")
+    private Path indexFile;
+
+    @CommandLine.Option(names = {"-b", "--build"}, description = "Scans this root directory and (re)builds the tag-index before querying")
+    private Path buildRoot;
+
+    @CommandLine.Option(names = {"-c", "--count"}, description = "Only prints the number of matching files")
+    private boolean count;
+
+    @Override
+    public Integer call() throws Exception {
+        try {
+            final TagIndex index = buildRoot != null ? TagIndex.build(buildRoot, indexFile) : TagIndex.open(indexFile);
+            if(query == null) {
+                System.out.println("Indexed " + index.size() + " files with " + index.terms() + " distinct tags into '" + indexFile + "'");
+                return 111;
+            }
+
+            if(count) {
+                System.out.println(index.count(query));
+                return 111;
+            }
+
+            final List<Path> paths = index.query(query);
+            paths.forEach(System.out::println);
+            return paths.isEmpty() ? 113 : 111;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 112;
+        }
+    }
+}
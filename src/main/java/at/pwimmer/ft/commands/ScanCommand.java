@@ -0,0 +1,51 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.scan.ScanResult;
+import at.pwimmer.ft.scan.TreeScanner;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "scan", description = "Recursively reads the attributes of all files below the root directory in parallel")
+public class ScanCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The root directory to scan")
+    private Path root;
+
+    @CommandLine.Option(names = {"-an", "--attribute-name"}, description = "The name of a specific attribute to read only")
+    private String attributeName;
+
+    @CommandLine.Option(names = {"-p", "--parallelism"}, description = "The maximum number of directories listed concurrently, and of files read with --fixed-parallelism (default: number of processors)")
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--include"}, description = "Glob relative to the root, of which one must match a file, in example '**.mp4'")
+    private List<String> includes = new ArrayList<>();
+
+    @CommandLine.Option(names = {"--exclude"}, description = "Glob relative to the root, which excludes matching files and directories")
+    private List<String> excludes = new ArrayList<>();
+
+    @Override
+    public Integer call() throws Exception {
+        final TreeScanner scanner = new TreeScanner(parallelism, attributeName, includes, excludes);
+        final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+
+        // The workers report concurrently, so each file is written as one block while holding the writer.
+        final ScanResult result = scanner.scan(root, (path, attributes) -> {
+            synchronized(out) {
+                attributes.forEach((name, value) -> out.append(path.toString()).append('\t').append(name).append('=').append(value).append('\n'));
+            }
+        });
+        out.flush();
+
+        result.getFailures().forEach((path, message) -> System.err.println(message));
+        System.err.println("Scanned " + result.getFiles() + " files, " + result.getTaggedFiles() + " tagged, " + result.getFailures().size() + " failed");
+        return result.getFailures().isEmpty() ? 71 : 72;
+    }
+}
@@ -0,0 +1,39 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.daemon.TaggerDaemon;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "serve", description = "Runs as a daemon serving read/write/delete/find requests on a Unix-domain-socket")
+public class ServeCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The path of the Unix-domain-socket to listen on")
+    private Path socket;
+
+    @Override
+    public Integer call() throws Exception {
+        try {
+            final TaggerDaemon daemon = TaggerDaemon.bind(socket);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    daemon.close();
+                }
+                catch(IOException ex) {
+                    System.err.println("Failed to remove the socket '" + socket + "': " + ex.getMessage());
+                }
+            }));
+
+            System.out.println("Serving requests on '" + socket + "'");
+            daemon.serve();
+            return 91;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 92;
+        }
+    }
+}
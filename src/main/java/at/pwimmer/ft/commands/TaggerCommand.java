@@ -1,13 +1,39 @@
 package at.pwimmer.ft.commands;
 
+import at.pwimmer.ft.AttributeCache;
+import at.pwimmer.ft.StorageBackend;
+import at.pwimmer.ft.daemon.TaggerClient;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.metrics.AttributeMetrics;
+import at.pwimmer.ft.schedule.IoScheduler;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
-@CommandLine.Command(name = "file-tagger", mixinStandardHelpOptions = true,
-        subcommands = {AttributeReadCommand.class, AttributeWriteCommand.class, AttributeDeleteCommand.class})
+@CommandLine.Command(name = "file-tagger", mixinStandardHelpOptions = true)
 public class TaggerCommand implements Callable<Integer> {
+    // The subcommands are registered by name, so only the model of the invoked one has to be built by reflection.
+    private static final Map<String, Class<?>> SUBCOMMANDS = new LinkedHashMap<>();
+    private static final Set<String> OPTIONS_WITH_VALUE = Set.of("-f", "--file", "--socket", "--storage", "--cache");
+
+    static {
+        SUBCOMMANDS.put("read", AttributeReadCommand.class);
+        SUBCOMMANDS.put("write", AttributeWriteCommand.class);
+        SUBCOMMANDS.put("delete", AttributeDeleteCommand.class);
+        SUBCOMMANDS.put("find", AttributeFindCommand.class);
+        SUBCOMMANDS.put("index", IndexCommand.class);
+        SUBCOMMANDS.put("scan", ScanCommand.class);
+        SUBCOMMANDS.put("bulk", BulkCommand.class);
+        SUBCOMMANDS.put("serve", ServeCommand.class);
+        SUBCOMMANDS.put("watch", WatchCommand.class);
+        SUBCOMMANDS.put("query", QueryCommand.class);
+        SUBCOMMANDS.put("export", ExportCommand.class);
+        SUBCOMMANDS.put("fingerprint", FingerprintCommand.class);
+    }
 
     @CommandLine.Option(names = {"-V", "--version"}, versionHelp = true, description = "display version info")
     private boolean versionInfoRequested;
@@ -18,8 +44,82 @@ public class TaggerCommand implements Callable<Integer> {
     @CommandLine.Option(names = {"-f", "--file"}, description = "The file to tag")
     private Path target;
 
+    @CommandLine.Option(names = {"--socket"}, defaultValue = "${env:FILE_TAGGER_SOCKET}", description = "Forwards read/write/delete/find to the daemon listening on this socket (default: $FILE_TAGGER_SOCKET)")
+    private Path socket;
+
+    private boolean stats;
+
+    @CommandLine.Option(names = {"--stats"}, description = "Prints the calls, bytes and latencies of all attribute-operations to stderr at exit")
+    void setStats(boolean stats) {
+        // Print from a shutdown-hook, so the long-running serve and watch commands report when they are stopped.
+        if(stats && !this.stats)
+            Runtime.getRuntime().addShutdownHook(new Thread(TaggerCommand::printStats, "file-tagger-stats"));
+        this.stats = stats;
+    }
+
+    /**
+     * Creates the command-line for the passed arguments. Building the model of a command costs a lot of reflection,
+     * so only the subcommand addressed by the arguments is registered. Without a known subcommand, in example for
+     * the usage-help, all subcommands are registered.
+     * @param args The arguments, which will be executed by the returned command-line.
+     * @return The command-line with the needed subcommands.
+     */
+    public static CommandLine newCommandLine(String... args) {
+        final CommandLine commandLine = new CommandLine(new TaggerCommand());
+        final String requested = findSubcommand(args);
+        for(Map.Entry<String, Class<?>> entry : SUBCOMMANDS.entrySet()) {
+            if(requested == null || requested.equals(entry.getKey()))
+                commandLine.addSubcommand(entry.getKey(), entry.getValue());
+        }
+        return commandLine;
+    }
+
+    @CommandLine.Option(names = {"--storage"}, description = "Stores the attributes as AUTO, XATTR or SIDECAR, AUTO uses a sidecar-file where extended attributes are not supported (default: AUTO)")
+    void setStorage(StorageBackend storage) {
+        if(storage != null)  StorageBackend.setCurrent(storage);
+    }
+
+    @CommandLine.Option(names = {"--fixed-parallelism"}, description = "Reads the files of multi-file operations with a fixed parallelism instead of adapting it to the latency of each drive")
+    void setFixedParallelism(boolean fixed) {
+        if(fixed)  IoScheduler.setCurrent(null);
+    }
+
+    @CommandLine.Option(names = {"--cache"}, paramLabel = "<entries>", description = "Caches the attributes of up to this many files in memory, validated by their ctime and size (default: disabled)")
+    void setCache(int entries) {
+        if(entries > 0)  AttributeCache.enable(entries);
+        else  AttributeCache.setCurrent(null);
+    }
+
     @Override
     public Integer call() throws Exception {
         return 11;
     }
+
+    public Path getSocket() {
+        return socket;
+    }
+
+    /**
+     * Connects to the daemon, if a socket has been specified. The subcommands forward their requests to the
+     * returned client, or run them locally if it is <code>null</code>.
+     */
+    TaggerClient connect() throws FileTaggerException {
+        return socket == null ? null : TaggerClient.connect(socket);
+    }
+
+    private static String findSubcommand(String... args) {
+        for(int i = 0; args != null && i < args.length; i++) {
+            // Skip the values of the own options, they may look like a subcommand, in example '-f read'.
+            if(OPTIONS_WITH_VALUE.contains(args[i]))  i++;
+            else if(SUBCOMMANDS.containsKey(args[i]))  return args[i];
+            else if(!args[i].startsWith("-"))  return null;
+        }
+        return null;
+    }
+
+    private static void printStats() {
+        System.err.print(AttributeMetrics.summary());
+        final AttributeCache cache = AttributeCache.getCurrent();
+        if(cache != null)  System.err.print(cache.summary());
+    }
 }
@@ -0,0 +1,57 @@
+package at.pwimmer.ft.commands;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.IndexWatcher;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+@CommandLine.Command(name = "watch", description = "Brings the index up-to-date and keeps it fresh by watching the root directory")
+public class WatchCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(arity = "1", description = "The root directory to watch")
+    private Path root;
+
+    @CommandLine.Option(names = {"-an", "--attribute-name"}, defaultValue = "uuid", description = "The name of the attribute to index (default: ${DEFAULT-VALUE})")
+    private String attributeName;
+
+    @CommandLine.Option(names = {"-i", "--index"}, defaultValue = "file-tagger.idx", description = "The index-file to maintain (default: ${DEFAULT-VALUE})")
+    private Path indexFile;
+
+    @CommandLine.Option(names = {"-q", "--quiet-period"}, defaultValue = "500", description = "Milliseconds without events before a burst of changes is applied (default: ${DEFAULT-VALUE})")
+    private long quietMillis;
+
+    @Override
+    public Integer call() throws Exception {
+        // On shutdown, the watching thread is interrupted and the hook waits until the watcher has been closed.
+        final Thread watching = Thread.currentThread();
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final Thread hook = new Thread(() -> {
+            watching.interrupt();
+            try {
+                stopped.await();
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try(IndexWatcher watcher = new IndexWatcher(root, attributeName, indexFile, quietMillis)) {
+            final int changed = watcher.catchUp();
+            System.out.println("Caught up index '" + indexFile + "', re-read " + changed + " of " + watcher.getKnownFiles() + " files");
+
+            Runtime.getRuntime().addShutdownHook(hook);
+            watcher.watch();
+            return 101;
+        }
+        catch(FileTaggerException ex) {
+            System.err.println(ex.getMessage());
+            return 102;
+        }
+        finally {
+            stopped.countDown();
+        }
+    }
+}
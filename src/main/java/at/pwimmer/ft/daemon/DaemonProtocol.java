@@ -0,0 +1,84 @@
+package at.pwimmer.ft.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Daemon Protocol</h1>
+ * <p>
+ *     The simple framed protocol spoken between the {@link TaggerClient} and the {@link TaggerDaemon}.
+ *     Each frame starts with the number of its fields as an int, followed by each field as a length-prefixed
+ *     UTF-8 string. All ints are big-endian.
+ * </p>
+ * <p>
+ *     A request frame starts with the operation (in example {@link #READ}) followed by its arguments.
+ *     The response frame starts with {@link #OK} followed by the results, or with {@link #ERROR} followed
+ *     by the error-message. A connection may send any number of requests, each one is answered in order.
+ * </p>
+ */
+public final class DaemonProtocol {
+    public static final String PING = "ping";
+    public static final String LIST = "list";
+    public static final String READ = "read";
+    public static final String WRITE = "write";
+    public static final String DELETE = "delete";
+    public static final String FIND = "find";
+
+    public static final String OK = "ok";
+    public static final String ERROR = "error";
+
+    private static final int MAX_FIELDS = 1 << 20;
+    private static final int MAX_FIELD_LENGTH = 1 << 20;
+
+    private DaemonProtocol() {
+        // private no-arg constructor to hide the implicit public one.
+    }
+
+    /**
+     * Writes the passed fields as one frame and flushes the stream.
+     */
+    public static void writeFrame(DataOutputStream out, List<String> fields) throws IOException {
+        out.writeInt(fields.size());
+        for(String field : fields) {
+            final byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the next frame from the stream.
+     * @return The fields of the frame, or <code>null</code> if the stream has been closed before a new frame.
+     * @throws IOException Will be thrown if the frame could not be read or exceeds the limits.
+     */
+    public static List<String> readFrame(DataInputStream in) throws IOException {
+        final int count;
+        try {
+            count = in.readInt();
+        }
+        catch(EOFException ex) {
+            return null;
+        }
+
+        if(count < 0 || count > MAX_FIELDS)
+            throw new IOException("Invalid frame with "+count+" fields");
+
+        final List<String> fields = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            final int length = in.readInt();
+            if(length < 0 || length > MAX_FIELD_LENGTH)
+                throw new IOException("Invalid frame-field with "+length+" bytes");
+
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            fields.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,146 @@
+package at.pwimmer.ft.daemon;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>Tagger Client</h1>
+ * <p>
+ *     The thin client of the {@link TaggerDaemon}. Its methods mirror the ones of the
+ *     {@link at.pwimmer.ft.FileTaggerUtils}, but forward each call over the Unix-domain-socket to the daemon.
+ *     One client keeps its connection open, so many requests can be sent without reconnecting.
+ * </p>
+ * <p>
+ *     Relative paths are resolved against the working-directory of the client before sending them,
+ *     because the daemon may run in another directory. A client is not thread-safe.
+ * </p>
+ */
+public class TaggerClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private TaggerClient(SocketChannel channel) {
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Connects a new client to the daemon listening on the passed socket-path.
+     * @param socket The path of the Unix-domain-socket of the daemon.
+     * @return The connected client, which should be closed after usage.
+     * @throws FileTaggerException Will be thrown if no daemon is listening on the socket.
+     */
+    public static TaggerClient connect(Path socket) throws FileTaggerException {
+        if(socket == null)
+            throw new IllegalArgumentException("The passed socket is null!");
+
+        try {
+            final SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+                return new TaggerClient(channel);
+            }
+            catch(IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not connect to the daemon at '"+socket+"'", ex);
+        }
+    }
+
+    public void ping() throws FileTaggerException {
+        request(DaemonProtocol.PING);
+    }
+
+    public Map<String, String> listAttributes(Path path) throws FileTaggerException {
+        final List<String> result = request(DaemonProtocol.LIST, absolute(path));
+        final Map<String, String> map = new LinkedHashMap<>();
+        for(int i = 0; i + 1 < result.size(); i += 2)  map.put(result.get(i), result.get(i + 1));
+        return map;
+    }
+
+    public String readAttributeFrom(Path path, String attributeName) throws FileTaggerException {
+        return request(DaemonProtocol.READ, absolute(path), attributeName).get(0);
+    }
+
+    public boolean writeAttributeTo(Path path, String attributeName, String attributeValue) throws FileTaggerException {
+        return Boolean.parseBoolean(request(DaemonProtocol.WRITE, absolute(path), attributeName, attributeValue).get(0));
+    }
+
+    public boolean deleteAttribute(Path path, String attributeName) throws FileTaggerException {
+        return Boolean.parseBoolean(request(DaemonProtocol.DELETE, absolute(path), attributeName).get(0));
+    }
+
+    /**
+     * Looks up the passed value in the index, which is opened and cached by the daemon.
+     * @param indexFile The index-file created by the <code>index</code> command.
+     * @param attributeValue The attribute-value to look up.
+     * @return The paths of all matching files.
+     * @throws FileTaggerException Will be thrown if the index could not be opened by the daemon.
+     */
+    public List<Path> find(Path indexFile, String attributeValue) throws FileTaggerException {
+        final List<Path> paths = new ArrayList<>();
+        for(String path : request(DaemonProtocol.FIND, absolute(indexFile), attributeValue))  paths.add(Path.of(path));
+        return paths;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for sending a request and unpacking the response.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private List<String> request(String... fields) throws FileTaggerException {
+        for(String field : fields) {
+            if(field == null)
+                throw new IllegalArgumentException("The passed request-fields must not be null!");
+        }
+
+        final List<String> response;
+        try {
+            DaemonProtocol.writeFrame(out, Arrays.asList(fields));
+            response = DaemonProtocol.readFrame(in);
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not send the request '"+fields[0]+"' to the daemon", ex);
+        }
+
+        if(response == null || response.isEmpty())
+            throw new FileTaggerException("The daemon closed the connection without answering '"+fields[0]+"'");
+        if(DaemonProtocol.ERROR.equals(response.get(0)))
+            throw new FileTaggerException(response.size() > 1 ? response.get(1) : "The daemon failed to serve '"+fields[0]+"'");
+
+        return response.subList(1, response.size());
+    }
+
+    private static String absolute(Path path) {
+        if(path == null)
+            throw new IllegalArgumentException("The passed path is null!");
+
+        return path.toAbsolutePath().toString();
+    }
+}
@@ -0,0 +1,257 @@
+package at.pwimmer.ft.daemon;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.AttributeIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h1>Tagger Daemon</h1>
+ * <p>
+ *     A long-running server, which listens on a local Unix-domain-socket and serves the requests of the
+ *     {@link TaggerClient} using the {@link DaemonProtocol}. Because the JVM stays alive, requests are served by
+ *     already warm code and the opened {@link AttributeIndex}es are cached, so a single tag-operation only
+ *     costs the attribute-syscall instead of a whole JVM-startup.
+ * </p>
+ * <p>
+ *     Each connection is served by its own thread and may send any number of requests. The cached indexes are
+ *     reopened as soon as their file has been modified, in example by a new run of the <code>index</code> command.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The socket-file is only protected by the file-permissions of its directory, so it should
+ *     be placed in a directory only accessible by the users which are allowed to tag files.
+ * </p>
+ */
+public class TaggerDaemon implements AutoCloseable {
+    private final Path socket;
+    private final Object socketKey;
+    private final ServerSocketChannel server;
+    private final ExecutorService executor;
+    private final Map<Path, CachedIndex> indexes = new ConcurrentHashMap<>();
+
+    private TaggerDaemon(Path socket, Object socketKey, ServerSocketChannel server) {
+        this.socket = socket;
+        this.socketKey = socketKey;
+        this.server = server;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "file-tagger-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds a new daemon to the passed socket-path. A stale socket-file of a previous run will be replaced, but only
+     * if it is a socket and nobody is listening on it anymore.
+     * @param socket The path of the Unix-domain-socket to listen on.
+     * @return The bound daemon, which has to be started with {@link #serve()}.
+     * @throws FileTaggerException Will be thrown if the socket could not be bound, another daemon is already
+     *                             listening on it or the path is taken by something else than a socket.
+     */
+    public static TaggerDaemon bind(Path socket) throws FileTaggerException {
+        if(socket == null)
+            throw new IllegalArgumentException("The passed socket is null!");
+
+        try {
+            removeStaleSocket(socket);
+            final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                server.bind(UnixDomainSocketAddress.of(socket));
+                return new TaggerDaemon(socket, fileKey(socket), server);
+            }
+            catch(IOException ex) {
+                server.close();
+                throw ex;
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not bind the daemon to '"+socket+"'", ex);
+        }
+    }
+
+    /**
+     * Accepts and serves connections until the daemon is closed. This method blocks the calling thread.
+     */
+    public void serve() {
+        while(server.isOpen()) {
+            try {
+                final SocketChannel channel = server.accept();
+                executor.execute(() -> handle(channel));
+            }
+            catch(ClosedChannelException ex) {
+                // The daemon has been closed while waiting for the next connection.
+                return;
+            }
+            catch(IOException ex) {
+                // A single failed accept should not stop the daemon, just wait for the next connection.
+            }
+        }
+    }
+
+    public Path getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+
+        // Only remove the own socket-file, the path may have been taken over since the daemon has been bound.
+        final Object key = fileKey(socket);
+        if(key != null && key.equals(socketKey))  Files.deleteIfExists(socket);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for handling the connections and dispatching the requests.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void handle(SocketChannel channel) {
+        try(channel;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            List<String> request;
+            while((request = DaemonProtocol.readFrame(in)) != null) {
+                DaemonProtocol.writeFrame(out, dispatch(request));
+            }
+        }
+        catch(IOException ex) {
+            // The client has closed the connection or sent an invalid frame, so drop the connection.
+        }
+    }
+
+    List<String> dispatch(List<String> request) {
+        final List<String> response = new ArrayList<>();
+        response.add(DaemonProtocol.OK);
+
+        try {
+            final String operation = request.isEmpty() ? "" : request.get(0);
+            switch(operation) {
+                case DaemonProtocol.PING:
+                    break;
+                case DaemonProtocol.LIST:
+                    expectArguments(request, 1);
+                    FileTaggerUtils.listAttributes(Path.of(request.get(1))).forEach((name, value) -> {
+                        response.add(name);
+                        response.add(value);
+                    });
+                    break;
+                case DaemonProtocol.READ:
+                    expectArguments(request, 2);
+                    response.add(FileTaggerUtils.readAttributeFrom(Path.of(request.get(1)), request.get(2)));
+                    break;
+                case DaemonProtocol.WRITE:
+                    expectArguments(request, 3);
+                    response.add(String.valueOf(FileTaggerUtils.writeAttributeTo(Path.of(request.get(1)), request.get(2), request.get(3))));
+                    break;
+                case DaemonProtocol.DELETE:
+                    expectArguments(request, 2);
+                    response.add(String.valueOf(FileTaggerUtils.deleteAttribute(Path.of(request.get(1)), request.get(2))));
+                    break;
+                case DaemonProtocol.FIND:
+                    expectArguments(request, 2);
+                    for(Path path : index(Path.of(request.get(1))).find(request.get(2)))
+                        response.add(path.toString());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation '"+operation+"'");
+            }
+            return response;
+        }
+        catch(FileTaggerException | RuntimeException ex) {
+            return List.of(DaemonProtocol.ERROR, String.valueOf(ex.getMessage()));
+        }
+    }
+
+    private AttributeIndex index(Path indexFile) throws FileTaggerException {
+        try {
+            final FileTime modified = Files.getLastModifiedTime(indexFile);
+            final CachedIndex cached = indexes.get(indexFile);
+            if(cached != null && cached.modified.equals(modified))  return cached.index;
+
+            final AttributeIndex index = AttributeIndex.open(indexFile);
+            indexes.put(indexFile, new CachedIndex(index, modified));
+            return index;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not open the attribute-index '"+indexFile+"'", ex);
+        }
+    }
+
+    private static void removeStaleSocket(Path socket) throws IOException, FileTaggerException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch(NoSuchFileException ex) {
+            return;
+        }
+
+        // A socket is neither a regular file, a directory nor a link, so never delete anything else by a wrong path.
+        if(!attrs.isOther())
+            throw new FileTaggerException("The path '"+socket+"' already exists and is not a socket");
+
+        try(SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            throw new FileTaggerException("A daemon is already running on '"+socket+"'");
+        }
+        catch(ConnectException ex) {
+            // The connection has been refused, so the socket-file has been left behind by a previous run.
+            Files.deleteIfExists(socket);
+        }
+        catch(IOException ex) {
+            // In example a missing permission, the daemon behind the socket-file may still be alive, so keep it.
+            throw new FileTaggerException("Could not check if a daemon is already running on '"+socket+"'", ex);
+        }
+    }
+
+    private static Object fileKey(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+        }
+        catch(IOException ex) {
+            return null;
+        }
+    }
+
+    private static void expectArguments(List<String> request, int count) {
+        if(request.size() != count + 1)
+            throw new IllegalArgumentException("The operation '"+request.get(0)+"' expects "+count+" arguments");
+    }
+
+    private static class CachedIndex {
+        private final AttributeIndex index;
+        private final FileTime modified;
+
+        CachedIndex(AttributeIndex index, FileTime modified) {
+            this.index = index;
+            this.modified = modified;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package at.pwimmer.ft.exceptions;
 import java.io.IOException;
 
 public class FileTaggerException extends Throwable {
+    private static final long serialVersionUID = 1L;
 
     public FileTaggerException(String message) {
         super(message);
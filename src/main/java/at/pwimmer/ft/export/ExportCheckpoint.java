@@ -0,0 +1,110 @@
+package at.pwimmer.ft.export;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The checkpoint of an incremental export. It stores the {@link at.pwimmer.ft.FileStamp} of every file below the
+ * exported root and whether the file has been exported with attributes, so the next run only reads and emits the
+ * files whose stamp has changed, and knows which removed files the receiver has to forget.
+ */
+final class ExportCheckpoint {
+    static final int MAGIC = 0x46544543;         // "FTEC"
+    static final int VERSION = 1;
+
+    private final Path file;
+    private final Path root;
+    private final Map<Path, Entry> entries = new HashMap<>();
+
+    ExportCheckpoint(Path file, Path root) {
+        this.file = file.toAbsolutePath().normalize();
+        this.root = root;
+    }
+
+    /**
+     * Loads the existing checkpoint, if it has been written for the same root.
+     * Otherwise, the checkpoint stays empty and the next export emits all tagged files.
+     */
+    void load() throws FileTaggerException {
+        if(Files.notExists(file))  return;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if(in.readInt() != MAGIC)
+                throw new FileTaggerException("The file '"+file+"' is not a valid export-checkpoint");
+            final int version = in.readInt();
+            if(version != VERSION)
+                throw new FileTaggerException("The export-checkpoint '"+file+"' has the unsupported version "+version);
+            if(!in.readUTF().equals(root.toString()))  return;
+
+            final int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                final Path path = Path.of(in.readUTF());
+                entries.put(path, new Entry(in.readLong(), in.readBoolean()));
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read the export-checkpoint '"+file+"'", ex);
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file first and then moves it into place,
+     * so an aborted export never leaves a checkpoint which skips files that have not been emitted.
+     */
+    void save() throws FileTaggerException {
+        try {
+            final Path parent = file.getParent();
+            Files.createDirectories(parent);
+            final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(root.toString());
+                    out.writeInt(entries.size());
+                    for(Map.Entry<Path, Entry> entry : entries.entrySet()) {
+                        out.writeUTF(entry.getKey().toString());
+                        out.writeLong(entry.getValue().stamp);
+                        out.writeBoolean(entry.getValue().tagged);
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not write the export-checkpoint '"+file+"'", ex);
+        }
+    }
+
+    Map<Path, Entry> getEntries() {
+        return entries;
+    }
+
+    boolean isIgnored(Path path) {
+        return path.getParent() != null && path.getParent().equals(file.getParent())
+                && path.getFileName().toString().startsWith(file.getFileName().toString());
+    }
+
+    static final class Entry {
+        final long stamp;
+        final boolean tagged;
+
+        Entry(long stamp, boolean tagged) {
+            this.stamp = stamp;
+            this.tagged = tagged;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package at.pwimmer.ft.export;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The summary of a single {@link TagExporter} run. It counts the visited, read and emitted files and
+ * collects the error-message of each file which could not be read.
+ * <p>
+ * All methods are thread-safe, because the counters are updated concurrently by the reading workers.
+ */
+public class ExportResult {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder read = new LongAdder();
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final Map<Path, String> failures = new ConcurrentHashMap<>();
+
+    void fileVisited() {
+        files.increment();
+    }
+
+    void fileRead() {
+        read.increment();
+    }
+
+    void exported() {
+        exported.increment();
+    }
+
+    void removed() {
+        removed.increment();
+    }
+
+    void failed(Path path, String message) {
+        failures.put(path, message);
+    }
+
+    /**
+     * @return The number of regular files below the root.
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return The number of files, whose attributes have been read because they are new or have changed.
+     */
+    public long getReadFiles() {
+        return read.sum();
+    }
+
+    /**
+     * @return The number of emitted file-records.
+     */
+    public long getExported() {
+        return exported.sum();
+    }
+
+    /**
+     * @return The number of emitted records of removed files.
+     */
+    public long getRemoved() {
+        return removed.sum();
+    }
+
+    /**
+     * @return An unmodifiable map of each failed path and the message why it could not be read.
+     */
+    public Map<Path, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+}
@@ -0,0 +1,267 @@
+package at.pwimmer.ft.export;
+
+import at.pwimmer.ft.packed.PackedAttribute;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>Export Writer</h1>
+ * <p>
+ *     Writes the records of a {@link TagExporter} run as a stream through one large buffer, so a whole library is
+ *     exported with a few big writes instead of one write per file. Two formats are supported:
+ * </p>
+ * <ul>
+ *     <li><b>NDJSON</b>: one JSON-object per line, in example
+ *     <code>{"path":"/movies/a.mp4","fileKey":"(dev=803,ino=42)","stamp":1650000000000000000,"attributes":{"uuid":"1234"}}</code>.
+ *     A {@link PackedAttribute} is written as nested object of its fields, in example
+ *     <code>"meta":{"actors":["Tom Hanks"],"year":1998}</code>. A file which has been removed since the last
+ *     incremental export is written as <code>{"path":"/movies/a.mp4","removed":true}</code>.</li>
+ *     <li><b>BINARY</b>: the int <code>FTEX</code> and the int version, followed by one record per file. A record
+ *     starts with a type-byte: <code>1</code> for a file followed by its path, file-key, long stamp, int count and
+ *     the name- and value-pairs, <code>2</code> for a removed file followed by its path and <code>0</code> for the
+ *     end of the stream. Every string is written as int length and its UTF-8 bytes, the values as int length and
+ *     their raw bytes, so a packed value keeps its leading <code>0xFF</code>.</li>
+ * </ul>
+ * <p>
+ *     <b>Note</b>: A writer is not thread-safe, the exporter serializes all calls.
+ * </p>
+ */
+public abstract class ExportWriter implements AutoCloseable {
+    static final int MAGIC = 0x46544558;         // "FTEX"
+    static final int VERSION = 1;
+    static final byte END = 0;
+    static final byte FILE = 1;
+    static final byte REMOVED = 2;
+
+    public enum Format {
+        NDJSON, BINARY
+    }
+
+    /**
+     * Creates a new writer for the passed format, which writes to the passed stream.
+     * @param format The format of the written records.
+     * @param out The stream to write to, which will be closed by the writer.
+     * @return The created writer.
+     */
+    public static ExportWriter of(Format format, OutputStream out) {
+        if(format == null || out == null)
+            throw new IllegalArgumentException("The passed format or output-stream is null!");
+
+        return format == Format.NDJSON ? new NdjsonWriter(out) : new BinaryWriter(out);
+    }
+
+    /**
+     * Writes the record of a new or changed file.
+     * @param path The absolute path of the file.
+     * @param fileKey The key identifying the file on its filesystem, in example its device and inode,
+     *                or <code>null</code> if the filesystem has none.
+     * @param stamp The {@link at.pwimmer.ft.FileStamp} of the file, when its attributes have been read.
+     * @param attributes The raw attribute-values of the file, which may be empty if all of them have been deleted.
+     */
+    public abstract void file(Path path, String fileKey, long stamp, Map<String, byte[]> attributes) throws IOException;
+
+    /**
+     * Writes the record of a file, which has been exported before but does not exist anymore.
+     */
+    public abstract void removed(Path path) throws IOException;
+
+    /**
+     * Writes all buffered records to the underlying stream.
+     */
+    public abstract void flush() throws IOException;
+
+    /**
+     * Writes all buffered records and closes the underlying stream. Closing the writer again has no effect.
+     */
+    @Override
+    public abstract void close() throws IOException;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The writers of the supported formats.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class NdjsonWriter extends ExportWriter {
+        private final Writer out;
+
+        NdjsonWriter(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        public void file(Path path, String fileKey, long stamp, Map<String, byte[]> attributes) throws IOException {
+            out.write("{\"path\":");
+            string(path.toString());
+            out.write(",\"fileKey\":");
+            if(fileKey == null)  out.write("null");
+            else  string(fileKey);
+            out.write(",\"stamp\":");
+            out.write(Long.toString(stamp));
+            out.write(",\"attributes\":{");
+
+            boolean first = true;
+            for(Map.Entry<String, byte[]> entry : attributes.entrySet()) {
+                if(!first)  out.write(',');
+                string(entry.getKey());
+                out.write(':');
+                value(entry.getValue());
+                first = false;
+            }
+            out.write("}}\n");
+        }
+
+        @Override
+        public void removed(Path path) throws IOException {
+            out.write("{\"path\":");
+            string(path.toString());
+            out.write(",\"removed\":true}\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void value(byte[] value) throws IOException {
+            if(PackedAttribute.isPacked(value)) {
+                final PackedAttribute packed;
+                try {
+                    packed = PackedAttribute.decode(value);
+                }
+                catch(IllegalArgumentException ex) {
+                    // Some other binary value, which only starts like a packed one, so write it like any other value.
+                    string(new String(value, StandardCharsets.UTF_8));
+                    return;
+                }
+                packed(packed);
+            }
+            else {
+                string(new String(value, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void packed(PackedAttribute packed) throws IOException {
+            out.write('{');
+            boolean first = true;
+            for(String name : packed.names()) {
+                if(!first)  out.write(',');
+                string(name);
+                out.write(':');
+
+                final Object field = packed.get(name);
+                if(field instanceof Long) {
+                    out.write(field.toString());
+                }
+                else if(field instanceof List) {
+                    out.write('[');
+                    final List<?> values = (List<?>) field;
+                    for(int i = 0; i < values.size(); i++) {
+                        if(i > 0)  out.write(',');
+                        string((String) values.get(i));
+                    }
+                    out.write(']');
+                }
+                else {
+                    string((String) field);
+                }
+                first = false;
+            }
+            out.write('}');
+        }
+
+        private void string(String value) throws IOException {
+            out.write('"');
+            for(int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                switch(c) {
+                    case '"':  out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    default:
+                        if(c < 0x20)  out.write(String.format("\\u%04x", (int) c));
+                        else  out.write(c);
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    private static final class BinaryWriter extends ExportWriter {
+        private final DataOutputStream out;
+        private boolean started;
+        private boolean closed;
+
+        BinaryWriter(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void file(Path path, String fileKey, long stamp, Map<String, byte[]> attributes) throws IOException {
+            header();
+            out.writeByte(FILE);
+            string(path.toString());
+            string(fileKey == null ? "" : fileKey);
+            out.writeLong(stamp);
+            out.writeInt(attributes.size());
+            for(Map.Entry<String, byte[]> entry : attributes.entrySet()) {
+                string(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+
+        @Override
+        public void removed(Path path) throws IOException {
+            header();
+            out.writeByte(REMOVED);
+            string(path.toString());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed)  return;
+            closed = true;
+            try(out) {
+                header();
+                out.writeByte(END);
+            }
+        }
+
+        private void header() throws IOException {
+            if(started)  return;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            started = true;
+        }
+
+        private void string(String value) throws IOException {
+            // Attribute-values may be larger than the 64KB of writeUTF, so prefix the bytes with an int.
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
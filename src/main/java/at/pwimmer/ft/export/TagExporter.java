@@ -0,0 +1,274 @@
+package at.pwimmer.ft.export;
+
+import at.pwimmer.ft.FileStamp;
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.schedule.IoScheduler;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <h1>Tag Exporter</h1>
+ * <p>
+ *     Streams the path, file-key and attributes of all tagged files below a root directory to an
+ *     {@link ExportWriter}, in example to mirror the tags into the Movie-DB. The attributes are read in parallel
+ *     through the current {@link IoScheduler}, the records are written in the order the files have been read.
+ * </p>
+ * <p>
+ *     In the incremental mode an {@link ExportCheckpoint} remembers the {@link FileStamp} of every file. The next
+ *     export only reads and emits the files which are new or whose ctime (or mtime) has changed, including files
+ *     whose attributes have all been deleted, and emits a removed-record for every tagged file which has vanished.
+ *     A file or directory which could not be visited keeps the entries below it, so a short outage of a share
+ *     never removes its files from the export.
+ *     Unchanged files only cost the stat of the walk, so a nightly sync of a large library stays cheap.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The checkpoint is only written after the writer has been closed, so all records including
+ *     the end of the export are out and an aborted export is simply repeated by the next run.
+ * </p>
+ */
+public class TagExporter {
+    private final Path root;
+    private final ExportCheckpoint checkpoint;
+
+    /**
+     * Creates a new exporter, which always exports all tagged files below the passed root.
+     * @param root The root directory to export.
+     */
+    public TagExporter(Path root) {
+        this(root, null);
+    }
+
+    /**
+     * Creates a new incremental exporter, which only exports the changes since the run which wrote the checkpoint.
+     * @param root The root directory to export.
+     * @param checkpointFile The checkpoint-file, which is created by the first run, or <code>null</code>
+     *                       to export all tagged files.
+     */
+    public TagExporter(Path root, Path checkpointFile) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+
+        this.root = root.toAbsolutePath().normalize();
+        this.checkpoint = checkpointFile == null ? null : new ExportCheckpoint(checkpointFile, this.root);
+    }
+
+    /**
+     * Walks the tree and writes the records of all (changed) files to the passed writer. Files which could not be
+     * read do not abort the export, but are reported by the returned {@link ExportResult} and retried by the next run.
+     * @param writer The writer receiving the records, which is closed after the last record.
+     * @return The summary of the export.
+     * @throws FileTaggerException Will be thrown if the tree could not be walked or a record not be written.
+     */
+    public ExportResult export(ExportWriter writer) throws FileTaggerException {
+        if(writer == null)
+            throw new IllegalArgumentException("The passed writer is null!");
+
+        final ExportResult result = new ExportResult();
+        final Map<Path, ExportCheckpoint.Entry> known = checkpoint == null ? Map.of() : load();
+        final Set<Path> seen = new HashSet<>();
+        final List<Candidate> changed = walk(known, seen, result);
+
+        try {
+            readAll(changed, writer, result);
+
+            // Everything not seen by the walk has been removed since the last run.
+            for(Map.Entry<Path, ExportCheckpoint.Entry> entry : new ArrayList<>(known.entrySet())) {
+                if(seen.contains(entry.getKey()))  continue;
+
+                if(entry.getValue().tagged) {
+                    writer.removed(entry.getKey());
+                    result.removed();
+                }
+                known.remove(entry.getKey());
+            }
+            // Close the writer before saving the checkpoint, so the checkpoint never covers unwritten records.
+            writer.close();
+        }
+        catch(IOException | UncheckedIOException ex) {
+            throw new FileTaggerException("Could not write the export of '"+root+"'", ex);
+        }
+
+        if(checkpoint != null)  checkpoint.save();
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for walking the tree and reading the changed files.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Map<Path, ExportCheckpoint.Entry> load() throws FileTaggerException {
+        checkpoint.load();
+        return checkpoint.getEntries();
+    }
+
+    private List<Candidate> walk(Map<Path, ExportCheckpoint.Entry> known, Set<Path> seen, ExportResult result) throws FileTaggerException {
+        final List<Candidate> changed = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(!attrs.isRegularFile() || SidecarAttributeView.isSidecar(file) || (checkpoint != null && checkpoint.isIgnored(file)))
+                        return FileVisitResult.CONTINUE;
+
+                    result.fileVisited();
+                    seen.add(file);
+                    final String fileKey = attrs.fileKey() == null ? null : attrs.fileKey().toString();
+                    if(checkpoint == null) {
+                        changed.add(new Candidate(file, fileKey, null));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    final ExportCheckpoint.Entry entry = known.get(file);
+                    try {
+                        if(entry == null || entry.stamp != FileStamp.of(file))  changed.add(new Candidate(file, fileKey, entry));
+                    }
+                    catch(NoSuchFileException ex) {
+                        // The file vanished during the walk, so it is not seen anymore.
+                        seen.remove(file);
+                    }
+                    catch(IOException ex) {
+                        // Keep the previous entry, so the file is neither removed nor skipped by the next run.
+                        result.failed(file, "Could not visit '"+file+"': "+ex.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    if(exc instanceof NoSuchFileException)  return FileVisitResult.CONTINUE;
+
+                    result.failed(file, "Could not visit '"+file+"': "+exc.getMessage());
+                    keep(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    // The listing broke off, so the files after the failure have not been seen, but may still exist.
+                    if(exc != null && !(exc instanceof NoSuchFileException)) {
+                        result.failed(dir, "Could not list '"+dir+"': "+exc.getMessage());
+                        keep(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void keep(Path path) {
+                    // Only a file which is known to be gone is removed, everything behind a failure keeps its entry.
+                    for(Path file : known.keySet()) {
+                        if(file.startsWith(path))  seen.add(file);
+                    }
+                }
+            });
+            return changed;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not walk the tree '"+root+"'", ex);
+        }
+    }
+
+    private void readAll(List<Candidate> changed, ExportWriter writer, ExportResult result) {
+        final IoScheduler scheduler = IoScheduler.getCurrent();
+        if(scheduler == null) {
+            changed.parallelStream().forEach(candidate -> read(candidate, writer, result));
+            return;
+        }
+
+        // Only the reads are scheduled, a failed write aborts the export after the run like the parallel stream does.
+        final Map<Path, Candidate> candidates = new HashMap<>();
+        for(Candidate candidate : changed)  candidates.put(candidate.path, candidate);
+        final AtomicReference<UncheckedIOException> failure = new AtomicReference<>();
+        scheduler.run(candidates.keySet(), TagExporter::snapshot, (path, snapshot) -> {
+            try {
+                write(candidates.get(path), snapshot, writer, result);
+            }
+            catch(UncheckedIOException ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }).getFailures().forEach(result::failed);
+
+        if(failure.get() != null)  throw failure.get();
+    }
+
+    private void read(Candidate candidate, ExportWriter writer, ExportResult result) {
+        final Snapshot snapshot;
+        try {
+            snapshot = snapshot(candidate.path);
+        }
+        catch(IOException | FileTaggerException | RuntimeException ex) {
+            // Keep the previous entry, so the file is read again by the next run.
+            result.failed(candidate.path, ex.getMessage());
+            return;
+        }
+        write(candidate, snapshot, writer, result);
+    }
+
+    private static Snapshot snapshot(Path file) throws IOException, FileTaggerException {
+        // Take the stamp before reading, so a change during the read is exported by the next run.
+        final long stamp = FileStamp.of(file);
+        return new Snapshot(stamp, FileTaggerUtils.openSession(file).readAllBytes());
+    }
+
+    private void write(Candidate candidate, Snapshot snapshot, ExportWriter writer, ExportResult result) {
+        result.fileRead();
+
+        // Untagged files are only of interest, if their attributes have been exported before.
+        final boolean tagged = !snapshot.attributes.isEmpty();
+        if(tagged || (candidate.previous != null && candidate.previous.tagged)) {
+            try {
+                synchronized(writer) {
+                    writer.file(candidate.path, candidate.fileKey, snapshot.stamp, snapshot.attributes);
+                }
+                result.exported();
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        if(checkpoint != null) {
+            synchronized(checkpoint) {
+                checkpoint.getEntries().put(candidate.path, new ExportCheckpoint.Entry(snapshot.stamp, tagged));
+            }
+        }
+    }
+
+    private static final class Snapshot {
+        private final long stamp;
+        private final Map<String, byte[]> attributes;
+
+        Snapshot(long stamp, Map<String, byte[]> attributes) {
+            this.stamp = stamp;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final class Candidate {
+        private final Path path;
+        private final String fileKey;
+        private final ExportCheckpoint.Entry previous;
+
+        Candidate(Path path, String fileKey, ExportCheckpoint.Entry previous) {
+            this.path = path;
+            this.fileKey = fileKey;
+            this.previous = previous;
+        }
+    }
+}
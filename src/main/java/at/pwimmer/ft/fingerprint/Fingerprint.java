@@ -0,0 +1,109 @@
+package at.pwimmer.ft.fingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <h1>Fingerprint</h1>
+ * <p>
+ *     Computes a cheap content-fingerprint of a file, which survives copying the file to a filesystem or tool
+ *     dropping the user-defined attributes. Instead of hashing a multi-GB video completely, only the size and
+ *     eight evenly spread blocks of 16KB (including the first and the last one) are hashed with SHA-256.
+ *     The blocks are read through memory-mapped regions of a {@link FileChannel}, so at most 128KB of every file
+ *     are paged in, no matter how large it is. Smaller files are hashed completely.
+ * </p>
+ * <p>
+ *     The fingerprint looks like <code>1:4700000000:9f86d081884c7d659a2feaa0c55ad015</code>, the version of the
+ *     sampling, the size in bytes and the first 128 bits of the hash. So files of different sizes can be told
+ *     apart without reading them at all.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Two files only differing outside of the sampled blocks get the same fingerprint, which is fine
+ *     for re-identifying movies, but not for detecting modifications.
+ * </p>
+ */
+public final class Fingerprint {
+    static final int VERSION = 1;
+    static final int SAMPLES = 8;
+    static final int BLOCK_SIZE = 16 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Fingerprint::newDigest);
+
+    private Fingerprint() {
+        // private no-arg constructor to hide the implicit public one.
+    }
+
+    /**
+     * Computes the fingerprint of the file at the passed path.
+     * @param file The regular file to fingerprint.
+     * @return The fingerprint in the format <code>version:size:hash</code>.
+     * @throws IOException Will be thrown if the file could not be read.
+     */
+    public static String of(Path file) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("The passed file is null!");
+
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+
+            if(size <= (long) SAMPLES * BLOCK_SIZE) {
+                if(size > 0)  digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            else {
+                // Spread the blocks evenly, the first one starts at zero and the last one ends at the end of the file.
+                final long step = (size - BLOCK_SIZE) / (SAMPLES - 1);
+                for(int i = 0; i < SAMPLES; i++) {
+                    final long offset = i == SAMPLES - 1 ? size - BLOCK_SIZE : i * step;
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset, BLOCK_SIZE));
+                }
+            }
+            return VERSION + ":" + size + ":" + hex(digest.digest(), 16);
+        }
+    }
+
+    /**
+     * Returns the size encoded in the passed fingerprint, so a stored fingerprint can be checked against the
+     * current size of the file with a single stat.
+     * @param fingerprint A fingerprint created by {@link #of(Path)}.
+     * @return The encoded size, or <code>-1</code> if the fingerprint is malformed or has another version.
+     */
+    public static long sizeOf(String fingerprint) {
+        if(fingerprint == null)  return -1;
+
+        final String[] parts = fingerprint.split(":");
+        if(parts.length != 3 || !parts[0].equals(String.valueOf(VERSION)))  return -1;
+        try {
+            return Long.parseLong(parts[1]);
+        }
+        catch(NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String hex(byte[] bytes, int length) {
+        final char[] chars = new char[length * 2];
+        for(int i = 0; i < length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Every Java platform has to support SHA-256", ex);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package at.pwimmer.ft.fingerprint;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The catalog of all known fingerprints and the UUIDs of the files they have been computed for. It is stored as
+ * sorted text-file with one <code>fingerprint&lt;TAB&gt;uuid</code> per line, so it can be imported into the
+ * database or merged by hand. Lookups only see the catalog as it has been loaded, so the result of a run does not
+ * depend on the order in which the files are visited.
+ */
+final class FingerprintCatalog {
+    private final Path file;
+    private final Map<String, Set<String>> loaded = new HashMap<>();
+    private final Set<Long> loadedSizes = new HashSet<>();
+    private final Map<String, Set<String>> entries = new ConcurrentHashMap<>();
+
+    FingerprintCatalog(Path file) {
+        this.file = file;
+    }
+
+    void load() throws FileTaggerException {
+        if(Files.notExists(file))  return;
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                final int tab = line.indexOf('\t');
+                if(line.isBlank() || tab < 0)  continue;
+
+                final String fingerprint = line.substring(0, tab);
+                final String uuid = line.substring(tab + 1);
+                loaded.computeIfAbsent(fingerprint, f -> new HashSet<>()).add(uuid);
+                loadedSizes.add(Fingerprint.sizeOf(fingerprint));
+                add(fingerprint, uuid);
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read the fingerprint-catalog '"+file+"'", ex);
+        }
+    }
+
+    /**
+     * Checks if any loaded fingerprint has the passed size, so files of other sizes never have to be read.
+     */
+    boolean hasSize(long size) {
+        return loadedSizes.contains(size);
+    }
+
+    /**
+     * @return The UUIDs of the loaded catalog for the passed fingerprint, more than one if it is ambiguous.
+     */
+    Set<String> lookup(String fingerprint) {
+        return loaded.getOrDefault(fingerprint, Collections.emptySet());
+    }
+
+    void add(String fingerprint, String uuid) {
+        entries.computeIfAbsent(fingerprint, f -> ConcurrentHashMap.newKeySet()).add(uuid);
+    }
+
+    void save() throws FileTaggerException {
+        try {
+            final Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for(Map.Entry<String, Set<String>> entry : new TreeMap<>(entries).entrySet()) {
+                        for(String uuid : new TreeSet<>(entry.getValue())) {
+                            writer.append(entry.getKey()).append('\t').append(uuid).append('\n');
+                        }
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not write the fingerprint-catalog '"+file+"'", ex);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
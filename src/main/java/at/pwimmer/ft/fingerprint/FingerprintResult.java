@@ -0,0 +1,74 @@
+package at.pwimmer.ft.fingerprint;
+
+import at.pwimmer.ft.scan.ScanResult;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The summary of a single {@link Fingerprinter} run. It counts the computed fingerprints and the re-attached
+ * UUIDs, the visited files and failures are taken from the underlying {@link ScanResult}.
+ * <p>
+ * All methods are thread-safe, because the counters are updated concurrently by the scanning workers.
+ */
+public class FingerprintResult {
+    private final LongAdder fingerprinted = new LongAdder();
+    private final LongAdder reattached = new LongAdder();
+    private final LongAdder ambiguous = new LongAdder();
+    private ScanResult scan;
+
+    void fingerprinted() {
+        fingerprinted.increment();
+    }
+
+    void reattached() {
+        reattached.increment();
+    }
+
+    void ambiguous() {
+        ambiguous.increment();
+    }
+
+    void scanned(ScanResult scan) {
+        this.scan = scan;
+    }
+
+    /**
+     * @return The number of regular files below the root.
+     */
+    public long getFiles() {
+        return scan.getFiles();
+    }
+
+    /**
+     * @return The number of files with a UUID, whose fingerprint has been computed and stored, because it
+     * was missing or outdated.
+     */
+    public long getFingerprinted() {
+        return fingerprinted.sum();
+    }
+
+    /**
+     * @return The number of files without a UUID, whose fingerprint has been found in the catalog and which got
+     * their UUID back.
+     */
+    public long getReattached() {
+        return reattached.sum();
+    }
+
+    /**
+     * @return The number of files without a UUID, whose fingerprint belongs to more than one UUID in the catalog,
+     * so they have been left untouched.
+     */
+    public long getAmbiguous() {
+        return ambiguous.sum();
+    }
+
+    /**
+     * @return An unmodifiable map of each failed path and the message why it could not be processed.
+     */
+    public Map<Path, String> getFailures() {
+        return scan.getFailures();
+    }
+}
@@ -0,0 +1,116 @@
+package at.pwimmer.ft.fingerprint;
+
+import at.pwimmer.ft.AttributeSession;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.scan.TreeScanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * <h1>Fingerprinter</h1>
+ * <p>
+ *     Keeps the UUIDs of a library attached to their files, even after the user-defined attributes have been
+ *     lost by copying a file to a filesystem or tool which drops them. A run visits every file below the root in
+ *     parallel with a {@link TreeScanner}:
+ * </p>
+ * <ul>
+ *     <li>A file with a UUID gets its {@link Fingerprint} stored in the attribute <code>fingerprint</code> and
+ *     added to the {@link FingerprintCatalog}. A stored fingerprint is only computed again, if the size of the
+ *     file has changed, so repeated runs only cost a stat per file.</li>
+ *     <li>A file without a UUID is only fingerprinted, if the catalog knows a fingerprint of the same size.
+ *     If its fingerprint belongs to exactly one UUID, the UUID and the fingerprint are written back.</li>
+ * </ul>
+ * <p>
+ *     <b>Note</b>: Empty files are never fingerprinted, because they all would share the same fingerprint.
+ * </p>
+ */
+public class Fingerprinter {
+    public static final String FINGERPRINT_ATTRIBUTE = "fingerprint";
+
+    private final String uuidAttribute;
+    private final FingerprintCatalog catalog;
+    private final TreeScanner scanner;
+
+    /**
+     * Creates a new fingerprinter using all available processors.
+     * @param uuidAttribute The name of the attribute holding the UUID, in example <code>uuid</code>.
+     * @param catalogFile The catalog-file, which is created by the first run and updated by the following ones.
+     */
+    public Fingerprinter(String uuidAttribute, Path catalogFile) {
+        this(uuidAttribute, catalogFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new fingerprinter with the passed concurrency-limit.
+     * @param uuidAttribute The name of the attribute holding the UUID, in example <code>uuid</code>.
+     * @param catalogFile The catalog-file, which is created by the first run and updated by the following ones.
+     * @param parallelism The maximum number of files processed concurrently, must be at least one.
+     */
+    public Fingerprinter(String uuidAttribute, Path catalogFile, int parallelism) {
+        if(uuidAttribute == null || uuidAttribute.isBlank())
+            throw new IllegalArgumentException("The passed uuid-attribute is null or blank!");
+        if(catalogFile == null)
+            throw new IllegalArgumentException("The passed catalog-file is null!");
+
+        this.uuidAttribute = uuidAttribute;
+        this.catalog = new FingerprintCatalog(catalogFile);
+        this.scanner = new TreeScanner(parallelism, null, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Fingerprints all files with a UUID below the passed root and re-attaches the lost UUIDs of all files,
+     * whose fingerprint is known by the catalog. Afterwards the updated catalog is written.
+     * @param root The root directory of the library.
+     * @return The summary of the run.
+     * @throws FileTaggerException Will be thrown if the catalog could not be read or written.
+     */
+    public FingerprintResult run(Path root) throws FileTaggerException {
+        catalog.load();
+
+        final FingerprintResult result = new FingerprintResult();
+        result.scanned(scanner.visit(root, session -> visit(session, result)));
+        catalog.save();
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for fingerprinting a file and re-attaching its UUID.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean visit(AttributeSession session, FingerprintResult result) throws FileTaggerException, IOException {
+        final Path file = session.getPath();
+        final long size = Files.size(file);
+        if(size == 0)  return false;
+
+        if(session.has(uuidAttribute)) {
+            final String uuid = session.readKnown(uuidAttribute);
+            String fingerprint = session.has(FINGERPRINT_ATTRIBUTE) ? session.readKnown(FINGERPRINT_ATTRIBUTE) : null;
+            if(Fingerprint.sizeOf(fingerprint) != size) {
+                fingerprint = Fingerprint.of(file);
+                session.write(FINGERPRINT_ATTRIBUTE, fingerprint);
+                result.fingerprinted();
+            }
+            catalog.add(fingerprint, uuid);
+            return true;
+        }
+
+        // Only files of a known size can match, all others are skipped without reading them.
+        if(!catalog.hasSize(size))  return false;
+
+        final String fingerprint = Fingerprint.of(file);
+        final Set<String> uuids = catalog.lookup(fingerprint);
+        if(uuids.size() > 1)  result.ambiguous();
+        if(uuids.size() != 1)  return false;
+
+        session.write(uuidAttribute, uuids.iterator().next());
+        session.write(FINGERPRINT_ATTRIBUTE, fingerprint);
+        result.reattached();
+        return true;
+    }
+}
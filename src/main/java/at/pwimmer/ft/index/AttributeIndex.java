@@ -0,0 +1,328 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.FileStamp;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.scan.TreeScanner;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>Attribute Index</h1>
+ * <p>
+ *     A persistent, read-only index which maps the value of one user-defined attribute (in example the movie-UUID)
+ *     to the paths of all files carrying that value. The index is built once by walking a root-directory with
+ *     {@link #build(Path, String, Path)} and is stored as a compact open-addressing hash-file.
+ * </p>
+ * <p>
+ *     Opening the index memory-maps the hash-file, so a lookup only touches the few pages of the probed slots
+ *     and records. Therefore, a lookup takes the same time no matter how big the indexed drive is.
+ * </p>
+ * <p>
+ *     The index also remembers the files without the attribute and the {@link FileStamp} of every file,
+ *     so the {@link IndexWatcher} can update it incrementally and only has to re-read changed files.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The file layout is big-endian and looks like this:
+ *     <code>header | slots[slotCount] | records</code>. Each slot holds the 64-bit hash of the value (zero marks
+ *     an empty slot) and the offset of its record. Each record holds the length-prefixed UTF-8 value (length -1
+ *     for files without the attribute), the length-prefixed UTF-8 path and the stamp of the file.
+ * </p>
+ */
+public class AttributeIndex implements AutoCloseable {
+    static final int MAGIC = 0x46544958;         // "FTIX"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+
+    private final Path indexFile;
+    private final String attributeName;
+    private final int slotCount;
+    private final int entryCount;
+    private final int slotsOffset;
+    private final int dataOffset;
+    private final MappedByteBuffer buffer;
+
+    private AttributeIndex(Path indexFile, MappedByteBuffer buffer) throws FileTaggerException {
+        this.indexFile = indexFile;
+        this.buffer = buffer;
+
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new FileTaggerException("The file '"+indexFile+"' is not a valid attribute-index");
+        if(buffer.getInt(4) != VERSION)
+            throw new FileTaggerException("The attribute-index '"+indexFile+"' has the unsupported version "+buffer.getInt(4));
+
+        this.slotCount = buffer.getInt(8);
+        this.entryCount = buffer.getInt(12);
+        this.slotsOffset = (int) buffer.getLong(16);
+        this.dataOffset = (int) buffer.getLong(24);
+
+        final byte[] name = new byte[Short.toUnsignedInt(buffer.getShort(HEADER_SIZE))];
+        buffer.get(HEADER_SIZE + 2, name);
+        this.attributeName = new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens the index stored at the passed {@link Path} by memory-mapping it in read-only mode.
+     * @param indexFile The path of the index-file, which has been created by {@link #build(Path, String, Path)}.
+     * @return The opened index, which should be closed after usage.
+     * @throws FileTaggerException Will be thrown if the file could not be mapped or is not a valid index.
+     */
+    public static AttributeIndex open(Path indexFile) throws FileTaggerException {
+        if(indexFile == null || Files.notExists(indexFile))
+            throw new IllegalArgumentException("The passed index-file is null or does not exist!");
+
+        try(FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            // The mapping stays valid after closing the channel.
+            return new AttributeIndex(indexFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not open the attribute-index '"+indexFile+"'", ex);
+        }
+    }
+
+    /**
+     * Walks the passed <em>root</em> directory, reads the attribute with the passed <em>attributeName</em> from
+     * every regular file and stores all found value-path combinations as a new index at <em>indexFile</em>.
+     * <p>
+     * The index is first written to a temporary file next to the target and then moved into place,
+     * so an already opened index will never see a half-written file. The tree is read in parallel by a
+     * {@link TreeScanner} and files which could not be read are skipped. To update an existing index,
+     * use {@link IndexWatcher#catchUp()}.
+     * @param root The root directory to walk.
+     * @param attributeName The name of the attribute to index, in example <code>uuid</code>.
+     * @param indexFile The path where the index should be stored.
+     * @return The number of indexed files.
+     * @throws FileTaggerException Will be thrown if the index could not be written.
+     */
+    public static int build(Path root, String attributeName, Path indexFile) throws FileTaggerException {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+        if(attributeName == null || attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is null or blank!");
+        if(indexFile == null)
+            throw new IllegalArgumentException("The passed index-file is null!");
+
+        // Scan the tree in parallel and remember every file with its stamp, so later updates only read changed files.
+        final IndexState state = new IndexState(root, attributeName, indexFile);
+        final TreeScanner scanner = new TreeScanner(Runtime.getRuntime().availableProcessors(), attributeName,
+                Collections.emptyList(), Collections.emptyList());
+        scanner.visit(state.getRoot(), session -> {
+            final Path file = session.getPath();
+            if(state.isIgnored(file))  return false;
+
+            // Take the stamp before reading, so a change during the read is detected by the next update.
+            final long stamp = FileStamp.of(file);
+            final String value = session.readAll(Collections.singletonList(attributeName)).get(attributeName);
+            state.put(file, value, stamp);
+            return value != null;
+        });
+        return state.save();
+    }
+
+    /**
+     * Returns the paths of all indexed files, whose attribute-value matches the passed <em>value</em>.
+     * If no file has been indexed with that value, an empty list will be returned.
+     * @param value The attribute-value to look up.
+     * @return An unmodifiable list of all matching paths.
+     */
+    public List<Path> find(String value) {
+        if(value == null)
+            throw new IllegalArgumentException("The passed value is null!");
+        if(entryCount == 0)  return Collections.emptyList();
+
+        final byte[] key = value.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(key);
+        final int mask = slotCount - 1;
+        List<Path> result = Collections.emptyList();
+
+        // Probe linearly until an empty slot ends the cluster, equal values may occur multiple times.
+        for(int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            final int position = slotsOffset + slot * SLOT_SIZE;
+            final long slotHash = buffer.getLong(position);
+            if(slotHash == 0)  break;
+            if(slotHash != hash)  continue;
+
+            final int record = dataOffset + (int) buffer.getLong(position + 8);
+            if(!matches(record, key))  continue;
+
+            if(result.isEmpty())  result = new ArrayList<>(1);
+            result.add(readPath(record, key.length));
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Reads all records of the index, including the files without the attribute, in example to update the index.
+     */
+    Map<Path, IndexedFile> readEntries() {
+        final Map<Path, IndexedFile> entries = new HashMap<>();
+        int record = dataOffset;
+        while(record < buffer.capacity()) {
+            final int valueLength = buffer.getInt(record);
+            final String value = valueLength < 0 ? null : readString(record + 4, valueLength);
+            final int pathRecord = record + 4 + Math.max(valueLength, 0);
+            final int pathLength = buffer.getInt(pathRecord);
+            final Path path = Path.of(readString(pathRecord + 4, pathLength));
+
+            entries.put(path, new IndexedFile(value, buffer.getLong(pathRecord + 4 + pathLength)));
+            record = pathRecord + 12 + pathLength;
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release explicitly, the mapping will be unmapped as soon as the buffer is garbage-collected.
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for writing the hash-file and comparing the mapped records.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean matches(int record, byte[] key) {
+        if(buffer.getInt(record) != key.length)  return false;
+
+        for(int i = 0; i < key.length; i++) {
+            if(buffer.get(record + 4 + i) != key[i])  return false;
+        }
+        return true;
+    }
+
+    private Path readPath(int record, int valueLength) {
+        final int pathRecord = record + 4 + valueLength;
+        return Path.of(readString(pathRecord + 4, buffer.getInt(pathRecord)));
+    }
+
+    private String readString(int position, int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the passed files as a new index, the index is first written to a temporary file and then moved into place.
+     * @return The number of files with the attribute set.
+     */
+    static int write(String attributeName, Map<Path, IndexedFile> files, Path indexFile) throws IOException {
+        final byte[] name = attributeName.getBytes(StandardCharsets.UTF_8);
+        final List<byte[][]> records = new ArrayList<>(files.size());
+        int tagged = 0;
+        for(Map.Entry<Path, IndexedFile> entry : files.entrySet()) {
+            final String value = entry.getValue().value;
+            final byte[] path = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+            records.add(new byte[][] {value == null ? null : value.getBytes(StandardCharsets.UTF_8), path});
+            if(value != null)  tagged++;
+        }
+
+        final int slotCount = slotCountFor(tagged);
+        final long slotsOffset = align(HEADER_SIZE + 2L + name.length);
+        final long dataOffset = slotsOffset + (long) slotCount * SLOT_SIZE;
+
+        // Fill the slot-table first, the record-offsets are known up-front because records are written in order.
+        final ByteBuffer slots = ByteBuffer.allocate(slotCount * SLOT_SIZE);
+        final int mask = slotCount - 1;
+        long recordOffset = 0;
+        for(byte[][] record : records) {
+            if(record[0] != null) {
+                final long hash = hash(record[0]);
+                int slot = (int) hash & mask;
+                while(slots.getLong(slot * SLOT_SIZE) != 0)  slot = (slot + 1) & mask;
+
+                slots.putLong(slot * SLOT_SIZE, hash);
+                slots.putLong(slot * SLOT_SIZE + 8, recordOffset);
+            }
+            recordOffset += 16L + (record[0] == null ? 0 : record[0].length) + record[1].length;
+        }
+
+        if(dataOffset + recordOffset > Integer.MAX_VALUE)
+            throw new IOException("The attribute-index would exceed the maximum mappable size of 2GB");
+
+        final Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(slotCount);
+                out.writeInt(tagged);
+                out.writeLong(slotsOffset);
+                out.writeLong(dataOffset);
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(new byte[(int) (slotsOffset - HEADER_SIZE - 2 - name.length)]);
+                out.write(slots.array());
+
+                int i = 0;
+                for(IndexedFile file : files.values()) {
+                    final byte[][] record = records.get(i++);
+                    out.writeInt(record[0] == null ? -1 : record[0].length);
+                    if(record[0] != null)  out.write(record[0]);
+                    out.writeInt(record[1].length);
+                    out.write(record[1]);
+                    out.writeLong(file.stamp);
+                }
+            }
+
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return tagged;
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int slotCountFor(int entries) {
+        // Keep the load-factor at or below 50% so probe-sequences stay short.
+        int slots = 16;
+        while(slots < entries * 2L)  slots <<= 1;
+        return slots;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    static long hash(byte[] bytes) {
+        // 64-bit FNV-1a with a final avalanche, zero is reserved to mark empty slots.
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
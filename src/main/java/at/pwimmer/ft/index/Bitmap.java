@@ -0,0 +1,358 @@
+package at.pwimmer.ft.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * <h1>Bitmap</h1>
+ * <p>
+ *     A compressed bitmap of non-negative ints, used as posting-list of the {@link TagIndex}. It follows the idea
+ *     of roaring-bitmaps: the ints are split into chunks by their upper 16 bits and each chunk is stored in the
+ *     cheaper of two containers. Sparse chunks (up to 4096 values) are stored as sorted <code>char</code>-array,
+ *     dense chunks as plain bitset of 1024 longs. So a rare tag costs two bytes per file, while a tag set on almost
+ *     every file costs one bit per file, and the boolean operations work on whole words instead of single ints.
+ * </p>
+ * <p>
+ *     <b>Note</b>: A bitmap is mutable while it is built by {@link #add(int)}, the operations
+ *     {@link #and(Bitmap)}, {@link #or(Bitmap)} and {@link #andNot(Bitmap)} always return a new bitmap.
+ * </p>
+ */
+final class Bitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    Bitmap() {
+        this(4);
+    }
+
+    private Bitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+    }
+
+    /**
+     * Creates a bitmap containing all ints from zero to the passed (exclusive) <em>end</em>.
+     */
+    static Bitmap range(int end) {
+        final Bitmap bitmap = new Bitmap();
+        for(int i = 0; i < end; i++)  bitmap.add(i);
+        return bitmap;
+    }
+
+    void add(int value) {
+        final char key = (char) (value >>> 16);
+        final char low = (char) value;
+
+        // Ids are usually added in ascending order, so check the last container first.
+        int index = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+        if(index < 0) {
+            index = -index - 1;
+            insert(index, key, new ArrayContainer(new char[4], 0));
+        }
+        containers[index] = containers[index].add(low);
+    }
+
+    boolean contains(int value) {
+        final int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for(int i = 0; i < size; i++)  cardinality += containers[i].cardinality();
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void forEach(IntConsumer consumer) {
+        for(int i = 0; i < size; i++) {
+            final int high = keys[i] << 16;
+            containers[i].forEach(low -> consumer.accept(high | low));
+        }
+    }
+
+    Bitmap and(Bitmap other) {
+        final Bitmap result = new Bitmap(Math.max(1, Math.min(size, other.size)));
+        int i = 0, j = 0;
+        while(i < size && j < other.size) {
+            if(keys[i] < other.keys[j])  i++;
+            else if(keys[i] > other.keys[j])  j++;
+            else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    Bitmap or(Bitmap other) {
+        final Bitmap result = new Bitmap(Math.max(1, size + other.size));
+        int i = 0, j = 0;
+        while(i < size || j < other.size) {
+            if(j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i]);
+                i++;
+            }
+            else if(i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j]);
+                j++;
+            }
+            else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    Bitmap andNot(Bitmap other) {
+        final Bitmap result = new Bitmap(Math.max(1, size));
+        int j = 0;
+        for(int i = 0; i < size; i++) {
+            while(j < other.size && other.keys[j] < keys[i])  j++;
+            final boolean both = j < other.size && other.keys[j] == keys[i];
+            result.append(keys[i], both ? containers[i].andNot(other.containers[j]) : containers[i]);
+        }
+        return result;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for(int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            containers[i].write(out);
+        }
+    }
+
+    static Bitmap read(DataInput in) throws IOException {
+        final int size = in.readInt();
+        final Bitmap bitmap = new Bitmap(Math.max(1, size));
+        for(int i = 0; i < size; i++) {
+            final char key = in.readChar();
+            bitmap.append(key, Container.read(in));
+        }
+        return bitmap;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods and containers storing the chunks of the bitmap.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void append(char key, Container container) {
+        if(container.cardinality() == 0)  return;
+        insert(size, key, container);
+    }
+
+    private void insert(int index, char key, Container container) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract void forEach(IntConsumer consumer);
+
+        abstract long[] words();
+
+        abstract void write(DataOutput out) throws IOException;
+
+        Container and(Container other) {
+            // Filter the sparse side by the other one, only two dense chunks are combined word by word.
+            if(this instanceof ArrayContainer)  return ((ArrayContainer) this).filter(other, true);
+            if(other instanceof ArrayContainer)  return ((ArrayContainer) other).filter(this, true);
+
+            final long[] words = words().clone();
+            final long[] others = other.words();
+            for(int i = 0; i < WORDS; i++)  words[i] &= others[i];
+            return fromWords(words);
+        }
+
+        Container or(Container other) {
+            final long[] words = words().clone();
+            final long[] others = other.words();
+            for(int i = 0; i < WORDS; i++)  words[i] |= others[i];
+            return fromWords(words);
+        }
+
+        Container andNot(Container other) {
+            if(this instanceof ArrayContainer)  return ((ArrayContainer) this).filter(other, false);
+
+            final long[] words = words().clone();
+            final long[] others = other.words();
+            for(int i = 0; i < WORDS; i++)  words[i] &= ~others[i];
+            return fromWords(words);
+        }
+
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for(long word : words)  cardinality += Long.bitCount(word);
+            if(cardinality > MAX_ARRAY_SIZE)  return new BitsetContainer(words, cardinality);
+
+            final char[] values = new char[cardinality];
+            int n = 0;
+            for(int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while(word != 0) {
+                    values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        static Container read(DataInput in) throws IOException {
+            final int cardinality = in.readInt();
+            if(cardinality > MAX_ARRAY_SIZE) {
+                final long[] words = new long[WORDS];
+                for(int i = 0; i < WORDS; i++)  words[i] = in.readLong();
+                return new BitsetContainer(words, cardinality);
+            }
+
+            final char[] values = new char[cardinality];
+            for(int i = 0; i < cardinality; i++)  values[i] = in.readChar();
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            // Ascending values are appended, everything else is inserted at its sorted position.
+            int index = cardinality > 0 && values[cardinality - 1] < value ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, value);
+            if(index >= 0)  return this;
+            if(cardinality == MAX_ARRAY_SIZE) {
+                final long[] words = words();
+                words[value >>> 6] |= 1L << value;
+                return new BitsetContainer(words, cardinality + 1);
+            }
+
+            index = -index - 1;
+            if(cardinality == values.length)  values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, cardinality * 2));
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for(int i = 0; i < cardinality; i++)  consumer.accept(values[i]);
+        }
+
+        @Override
+        long[] words() {
+            final long[] words = new long[WORDS];
+            for(int i = 0; i < cardinality; i++)  words[values[i] >>> 6] |= 1L << values[i];
+            return words;
+        }
+
+        Container filter(Container other, boolean keep) {
+            final char[] result = new char[cardinality];
+            int n = 0;
+            for(int i = 0; i < cardinality; i++) {
+                if(other.contains(values[i]) == keep)  result[n++] = values[i];
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeInt(cardinality);
+            for(int i = 0; i < cardinality; i++)  out.writeChar(values[i]);
+        }
+    }
+
+    private static final class BitsetContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitsetContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            final long before = words[value >>> 6];
+            words[value >>> 6] |= 1L << value;
+            if(before != words[value >>> 6])  cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for(int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while(word != 0) {
+                    consumer.accept(i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long[] words() {
+            return words;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeInt(cardinality);
+            for(long word : words)  out.writeLong(word);
+        }
+    }
+}
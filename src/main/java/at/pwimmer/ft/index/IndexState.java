@@ -0,0 +1,238 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.FileStamp;
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.schedule.IoScheduler;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The mutable in-memory state of an {@link AttributeIndex}, which is shared by the full build and the incremental
+ * updates of the {@link IndexWatcher}. It maps every known file below the root to its attribute-value and stamp,
+ * so only files with a changed {@link FileStamp} have to be read again.
+ */
+final class IndexState {
+    private final Path root;
+    private final String attributeName;
+    private final Path indexFile;
+    private final Map<Path, IndexedFile> files = new ConcurrentHashMap<>();
+    // A new state has never been written, so it is saved even if the tree turns out to be empty.
+    private boolean modified = true;
+
+    IndexState(Path root, String attributeName, Path indexFile) {
+        this.root = root.toAbsolutePath().normalize();
+        this.attributeName = attributeName;
+        this.indexFile = indexFile.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Loads the files of the existing index, if it has been built for the same attribute.
+     * Otherwise, the state stays empty and the next catch-up reads all files.
+     */
+    void load() throws FileTaggerException {
+        if(Files.notExists(indexFile))  return;
+
+        try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+            if(!index.getAttributeName().equals(attributeName))  return;
+
+            index.readEntries().forEach((path, file) -> {
+                if(path.startsWith(root))  files.put(path, file);
+            });
+            modified = false;
+        }
+    }
+
+    /**
+     * Walks the whole tree, removes all vanished files and re-reads the attributes of all new or changed files
+     * in parallel. Unchanged files only cost the stat of the walk.
+     * @return The number of files, whose attributes have been read again.
+     */
+    int catchUp() throws FileTaggerException {
+        final Set<Path> seen = new HashSet<>();
+        final List<Path> changed = new ArrayList<>();
+        walk(root, seen, changed);
+
+        // Everything not seen by the walk has been removed since the last run.
+        if(files.keySet().retainAll(seen))  modified = true;
+
+        readAll(changed);
+        return changed.size();
+    }
+
+    /**
+     * Updates the state for the passed path, which may be a new, changed or deleted file or directory.
+     * @return The number of files, whose attributes have been read again.
+     */
+    int refresh(Path path) throws FileTaggerException {
+        if(isIgnored(path))  return 0;
+        // A changed sidecar-file may have changed the tags of every file in its directory.
+        if(SidecarAttributeView.isSidecar(path))  return path.getParent() == null ? 0 : refresh(path.getParent());
+
+        if(Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            final List<Path> changed = new ArrayList<>();
+            walk(path, new HashSet<>(), changed);
+            changed.forEach(this::read);
+            return changed.size();
+        }
+
+        if(!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            remove(path);
+            return 0;
+        }
+
+        final IndexedFile known = files.get(path);
+        try {
+            if(known != null && known.stamp == FileStamp.of(path))  return 0;
+        }
+        catch(IOException ex) {
+            remove(path);
+            return 0;
+        }
+
+        read(path);
+        return 1;
+    }
+
+    /**
+     * Stores the attribute-value and stamp of the passed file, which has been read by the caller.
+     */
+    void put(Path file, String value, long stamp) {
+        files.put(file, new IndexedFile(value, stamp));
+        modified = true;
+    }
+
+    /**
+     * Removes the passed path and, if it has been a directory, all files below it.
+     */
+    void remove(Path path) {
+        if(files.remove(path) != null)  modified = true;
+        if(files.keySet().removeIf(known -> known.startsWith(path)))  modified = true;
+    }
+
+    /**
+     * Writes the state as the new index, if anything has changed since the last save.
+     * @return The number of files with the attribute set.
+     */
+    int save() throws FileTaggerException {
+        try {
+            if(!modified && Files.exists(indexFile))  return taggedFiles();
+
+            final int tagged = AttributeIndex.write(attributeName, files, indexFile);
+            modified = false;
+            return tagged;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not write the attribute-index '"+indexFile+"' for '"+root+"'", ex);
+        }
+    }
+
+    /**
+     * Checks if the passed path is the index itself or one of its temporary files, which must never be indexed.
+     * Otherwise, writing the index would trigger the watcher again and again.
+     */
+    boolean isIgnored(Path path) {
+        return path.getParent() != null && path.getParent().equals(indexFile.getParent())
+                && path.getFileName().toString().startsWith(indexFile.getFileName().toString());
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    Map<Path, IndexedFile> getFiles() {
+        return Collections.unmodifiableMap(files);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for walking the tree and reading the changed files.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private int taggedFiles() {
+        return (int) files.values().stream().filter(file -> file.value != null).count();
+    }
+
+    private void walk(Path start, Set<Path> seen, List<Path> changed) throws FileTaggerException {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(!attrs.isRegularFile() || isIgnored(file) || SidecarAttributeView.isSidecar(file))  return FileVisitResult.CONTINUE;
+
+                    seen.add(file);
+                    final IndexedFile known = files.get(file);
+                    try {
+                        if(known == null || known.stamp != FileStamp.of(file))  changed.add(file);
+                    }
+                    catch(IOException ex) {
+                        // The file vanished during the walk, so it is not seen anymore.
+                        seen.remove(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch(NoSuchFileException ex) {
+            remove(start);
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not walk the tree '"+start+"'", ex);
+        }
+    }
+
+    private void readAll(List<Path> changed) {
+        final IoScheduler scheduler = IoScheduler.getCurrent();
+        if(scheduler == null) {
+            changed.parallelStream().forEach(this::read);
+            return;
+        }
+
+        // Skip files whose attributes could not be read, they are read again by the next catch-up.
+        scheduler.run(changed, this::snapshot, files::put).getFailures().keySet().forEach(files::remove);
+        if(!changed.isEmpty())  modified = true;
+    }
+
+    private void read(Path file) {
+        try {
+            files.put(file, snapshot(file));
+        }
+        catch(IOException | FileTaggerException | RuntimeException ex) {
+            // Skip files whose attributes could not be read, they are read again by the next catch-up.
+            files.remove(file);
+        }
+        modified = true;
+    }
+
+    private IndexedFile snapshot(Path file) throws IOException, FileTaggerException {
+        // Take the stamp before reading, so a change during the read is detected by the next refresh.
+        final long stamp = FileStamp.of(file);
+        final Map<String, String> attributes = FileTaggerUtils.openSession(file).readAll(Collections.singletonList(attributeName));
+        return new IndexedFile(attributes.get(attributeName), stamp);
+    }
+}
@@ -0,0 +1,190 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Index Watcher</h1>
+ * <p>
+ *     Keeps an {@link AttributeIndex} fresh without periodic full scans. On start, {@link #catchUp()} loads the
+ *     existing index and walks the tree once, but only re-reads the attributes of files whose
+ *     {@link at.pwimmer.ft.FileStamp} has changed since the index has been written. Afterwards {@link #watch()}
+ *     registers every directory of the tree at a {@link WatchService} and applies each change incrementally.
+ * </p>
+ * <p>
+ *     Bursts of events, in example when a whole season is copied or tagged, are coalesced: the watcher waits until
+ *     no event has arrived for the quiet-period (or the maximum delay has passed), then re-reads only the affected
+ *     paths and writes the index once. If the event-queue overflows, a new catch-up is done instead.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Changing an attribute changes the ctime of a file, which is reported as a modify-event on Linux.
+ * </p>
+ */
+public class IndexWatcher implements AutoCloseable {
+    private static final long DEFAULT_QUIET_MILLIS = 500;
+
+    private final IndexState state;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private WatchService watchService;
+
+    /**
+     * Creates a new watcher with a quiet-period of 500 milliseconds.
+     * @param root The root directory of the tree to watch.
+     * @param attributeName The name of the indexed attribute, in example <code>uuid</code>.
+     * @param indexFile The path of the index to maintain.
+     */
+    public IndexWatcher(Path root, String attributeName, Path indexFile) {
+        this(root, attributeName, indexFile, DEFAULT_QUIET_MILLIS);
+    }
+
+    /**
+     * Creates a new watcher with the passed quiet-period. A burst of events is flushed at the latest
+     * after ten times the quiet-period, even if events keep arriving.
+     * @param root The root directory of the tree to watch.
+     * @param attributeName The name of the indexed attribute, in example <code>uuid</code>.
+     * @param indexFile The path of the index to maintain.
+     * @param quietMillis The time without events in milliseconds, after which the collected changes are applied.
+     */
+    public IndexWatcher(Path root, String attributeName, Path indexFile, long quietMillis) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+        if(attributeName == null || attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is null or blank!");
+        if(indexFile == null)
+            throw new IllegalArgumentException("The passed index-file is null!");
+        if(quietMillis < 1)
+            throw new IllegalArgumentException("The passed quiet-period must be at least one millisecond!");
+
+        this.state = new IndexState(root, attributeName, indexFile);
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = quietMillis * 10;
+    }
+
+    /**
+     * Loads the existing index and brings it up-to-date with the tree, only new and changed files are read.
+     * If the index does not exist yet or has been built for another attribute, all files are read.
+     * @return The number of files, whose attributes have been read again.
+     * @throws FileTaggerException Will be thrown if the tree could not be walked or the index not be written.
+     */
+    public int catchUp() throws FileTaggerException {
+        state.load();
+        final int changed = state.catchUp();
+        state.save();
+        return changed;
+    }
+
+    /**
+     * Watches the tree and applies all changes to the index until the watcher is closed.
+     * This method blocks the calling thread, so it should be called after {@link #catchUp()}.
+     * @throws FileTaggerException Will be thrown if the tree could not be registered or the index not be written.
+     */
+    public void watch() throws FileTaggerException {
+        try {
+            synchronized(this) {
+                watchService = state.getRoot().getFileSystem().newWatchService();
+            }
+            register(state.getRoot());
+
+            while(true) {
+                // Block for the first event of a burst, then collect until the tree calms down.
+                final Set<Path> dirty = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), dirty);
+
+                final long deadline = System.currentTimeMillis() + maxDelayMillis;
+                WatchKey key;
+                while(System.currentTimeMillis() < deadline && (key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null)
+                    overflow |= collect(key, dirty);
+
+                apply(dirty, overflow);
+            }
+        }
+        catch(ClosedWatchServiceException ex) {
+            // The watcher has been closed, so stop watching.
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not watch the tree '"+state.getRoot()+"'", ex);
+        }
+    }
+
+    /**
+     * @return The number of files currently known to the index, including the files without the attribute.
+     */
+    public int getKnownFiles() {
+        return state.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(watchService != null)  watchService.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for registering the directories and applying the collected events.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean collect(WatchKey key, Set<Path> dirty) {
+        final Path directory = (Path) key.watchable();
+        boolean overflow = false;
+
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW)  overflow = true;
+            else  dirty.add(directory.resolve((Path) event.context()));
+        }
+
+        // A key which is not valid anymore belongs to a deleted directory.
+        if(!key.reset())  dirty.add(directory);
+        return overflow;
+    }
+
+    private void apply(Set<Path> dirty, boolean overflow) throws IOException, FileTaggerException {
+        if(overflow) {
+            // Some events have been lost, so compare the whole tree with the index again.
+            register(state.getRoot());
+            state.catchUp();
+        }
+        else {
+            for(Path path : dirty) {
+                // New directories have to be watched too, their content may have been moved in as a whole.
+                if(Files.isDirectory(path))  register(path);
+                state.refresh(path);
+            }
+        }
+        state.save();
+    }
+
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,15 @@
+package at.pwimmer.ft.index;
+
+/**
+ * One file known to the index, together with its attribute-value (or <code>null</code> if the attribute is not set)
+ * and the {@link at.pwimmer.ft.FileStamp} at the time the value has been read.
+ */
+final class IndexedFile {
+    final String value;
+    final long stamp;
+
+    IndexedFile(String value, long stamp) {
+        this.value = value;
+        this.stamp = stamp;
+    }
+}
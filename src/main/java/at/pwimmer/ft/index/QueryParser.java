@@ -0,0 +1,131 @@
+package at.pwimmer.ft.index;
+
+/**
+ * A recursive-descent parser for the queries of the {@link TagIndex}, which evaluates the query while parsing it.
+ * The grammar looks like this, the operators are case-insensitive and a missing operator between two terms means
+ * <code>AND</code>:
+ * <pre>
+ *     or      := and ( OR and )*
+ *     and     := not ( [AND] not )*
+ *     not     := NOT not | primary
+ *     primary := '(' or ')' | name '=' value ['*'] | name '=' '*'
+ * </pre>
+ */
+final class QueryParser {
+    private final TagIndex index;
+    private final String query;
+    private int pos;
+
+    QueryParser(TagIndex index, String query) {
+        this.index = index;
+        this.query = query;
+    }
+
+    Bitmap parse() {
+        final Bitmap result = parseOr();
+        skipWhitespace();
+        if(pos < query.length())
+            throw new IllegalArgumentException("unexpected '"+query.charAt(pos)+"' at column "+(pos + 1));
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for each rule of the grammar.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Bitmap parseOr() {
+        Bitmap result = parseAnd();
+        while(consumeKeyword("OR"))  result = result.or(parseAnd());
+        return result;
+    }
+
+    private Bitmap parseAnd() {
+        Bitmap result = parseNot();
+        while(true) {
+            skipWhitespace();
+            if(pos >= query.length() || query.charAt(pos) == ')' || peekKeyword("OR"))  return result;
+
+            consumeKeyword("AND");
+            // Skip evaluating further terms as soon as nothing matches anymore, but still parse them.
+            final Bitmap next = parseNot();
+            result = result.isEmpty() ? result : result.and(next);
+        }
+    }
+
+    private Bitmap parseNot() {
+        if(consumeKeyword("NOT"))  return index.all().andNot(parseNot());
+        return parsePrimary();
+    }
+
+    private Bitmap parsePrimary() {
+        skipWhitespace();
+        if(pos < query.length() && query.charAt(pos) == '(') {
+            pos++;
+            final Bitmap result = parseOr();
+            skipWhitespace();
+            if(pos >= query.length() || query.charAt(pos) != ')')
+                throw new IllegalArgumentException("missing ')' at column "+(pos + 1));
+            pos++;
+            return result;
+        }
+
+        final String name = parseWord("=");
+        skipWhitespace();
+        if(pos >= query.length() || query.charAt(pos) != '=')
+            throw new IllegalArgumentException("expected '=' after '"+name+"' at column "+(pos + 1));
+        pos++;
+        skipWhitespace();
+
+        final String value = pos < query.length() && query.charAt(pos) == '"' ? parseQuoted() : parseWord("*");
+        final boolean prefix = pos < query.length() && query.charAt(pos) == '*';
+        if(prefix)  pos++;
+        if(value.isEmpty() && !prefix)
+            throw new IllegalArgumentException("missing value for '"+name+"' at column "+(pos + 1));
+
+        return index.term(name, value, prefix);
+    }
+
+    private String parseWord(String terminators) {
+        skipWhitespace();
+        final int start = pos;
+        while(pos < query.length()) {
+            final char c = query.charAt(pos);
+            if(Character.isWhitespace(c) || c == '(' || c == ')' || terminators.indexOf(c) >= 0)  break;
+            pos++;
+        }
+        if(pos == start && terminators.equals("="))
+            throw new IllegalArgumentException("expected an attribute-name at column "+(pos + 1));
+        return query.substring(start, pos);
+    }
+
+    private String parseQuoted() {
+        final StringBuilder sb = new StringBuilder();
+        pos++;
+        while(pos < query.length()) {
+            final char c = query.charAt(pos++);
+            if(c == '"')  return sb.toString();
+            if(c == '\\' && pos < query.length())  sb.append(query.charAt(pos++));
+            else  sb.append(c);
+        }
+        throw new IllegalArgumentException("unterminated quoted value");
+    }
+
+    private boolean peekKeyword(String keyword) {
+        skipWhitespace();
+        final int end = pos + keyword.length();
+        return query.regionMatches(true, pos, keyword, 0, keyword.length())
+                && (end == query.length() || Character.isWhitespace(query.charAt(end)) || query.charAt(end) == '(');
+    }
+
+    private boolean consumeKeyword(String keyword) {
+        if(!peekKeyword(keyword))  return false;
+        pos += keyword.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while(pos < query.length() && Character.isWhitespace(query.charAt(pos)))  pos++;
+    }
+}
@@ -0,0 +1,250 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.scan.ScanResult;
+import at.pwimmer.ft.scan.TreeScanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * <h1>Tag Index</h1>
+ * <p>
+ *     An inverted index over all user-defined attributes of a directory tree. Each scanned file gets a numeric id and
+ *     each attribute-name and -value combination (a <em>term</em>) maps to a compressed {@link Bitmap} of the ids
+ *     of all files carrying it. A query like <code>category=action AND actor=X AND NOT watched=true</code> is
+ *     therefore answered by intersecting a few bitmaps, without touching the files at all.
+ * </p>
+ * <p>
+ *     The terms are kept sorted, so a prefix-query like <code>actor=Tom*</code> unions the bitmaps of all
+ *     matching values and <code>watched=*</code> matches every file with the attribute set.
+ *     See {@link #query(String)} for the full query-syntax.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The index is built by {@link #build(Path, Path)} from a parallel {@link TreeScanner}-run and
+ *     stored as a compact binary file, which is loaded completely into memory by {@link #open(Path)}.
+ *     Every scanned file gets an id, even without any attribute, so <code>NOT watched=true</code> matches
+ *     untagged files too. Values longer than 1024 characters, like descriptions, are not indexed.
+ * </p>
+ */
+public class TagIndex {
+    static final int MAGIC = 0x46545449;         // "FTTI"
+    static final int VERSION = 2;
+    private static final char SEPARATOR = '\u0000';
+    private static final int MAX_VALUE_LENGTH = 1024;
+
+    private final List<Path> paths;
+    private final NavigableMap<String, Bitmap> terms;
+    private Bitmap all;
+
+    private TagIndex(List<Path> paths, NavigableMap<String, Bitmap> terms) {
+        this.paths = paths;
+        this.terms = terms;
+    }
+
+    /**
+     * Scans the tree below the passed <em>root</em> in parallel and stores the inverted index of all attributes
+     * at the passed <em>indexFile</em>. The index is written to a temporary file first and then moved into place.
+     * @param root The root directory to scan.
+     * @param indexFile The path where the index should be stored.
+     * @return The built index, which can be queried right away.
+     * @throws FileTaggerException Will be thrown if the index could not be written.
+     */
+    public static TagIndex build(Path root, Path indexFile) throws FileTaggerException {
+        if(indexFile == null)
+            throw new IllegalArgumentException("The passed index-file is null!");
+
+        final List<Path> paths = new ArrayList<>();
+        final NavigableMap<String, Bitmap> terms = new TreeMap<>();
+        final Path target = indexFile.toAbsolutePath().normalize();
+
+        // Untagged files get an id as well, so NOT can match them. The index itself and its temporary files are skipped.
+        // The scanner visits concurrently, ids are assigned under the lock so each bitmap is appended in order.
+        final ScanResult result = new TreeScanner().visit(root, session -> {
+            final Path file = session.getPath().toAbsolutePath().normalize();
+            if(target.getParent().equals(file.getParent()) && file.getFileName().toString().startsWith(target.getFileName().toString()))
+                return false;
+
+            final Map<String, String> attributes = session.readAll();
+            synchronized(paths) {
+                final int id = paths.size();
+                paths.add(file);
+                attributes.forEach((name, value) -> {
+                    // Long values like descriptions are never queried by their exact value, so skip them.
+                    if(value.length() <= MAX_VALUE_LENGTH)  terms.computeIfAbsent(term(name, value), t -> new Bitmap()).add(id);
+                });
+            }
+            return !attributes.isEmpty();
+        });
+
+        final TagIndex index = new TagIndex(paths, terms);
+        try {
+            index.write(indexFile);
+            return index;
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not write the tag-index '"+indexFile+"' for '"+root+"' ("+result.getFailures().size()+" files failed)", ex);
+        }
+    }
+
+    /**
+     * Loads the tag-index stored at the passed path into memory.
+     * @param indexFile The path of the index-file, which has been created by {@link #build(Path, Path)}.
+     * @return The loaded index.
+     * @throws FileTaggerException Will be thrown if the file could not be read or is not a valid tag-index.
+     */
+    public static TagIndex open(Path indexFile) throws FileTaggerException {
+        if(indexFile == null || Files.notExists(indexFile))
+            throw new IllegalArgumentException("The passed index-file is null or does not exist!");
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            if(in.readInt() != MAGIC)
+                throw new FileTaggerException("The file '"+indexFile+"' is not a valid tag-index");
+            final int version = in.readInt();
+            if(version != VERSION)
+                throw new FileTaggerException("The tag-index '"+indexFile+"' has the unsupported version "+version);
+
+            final int fileCount = in.readInt();
+            final List<Path> paths = new ArrayList<>(fileCount);
+            for(int i = 0; i < fileCount; i++)  paths.add(Path.of(in.readUTF()));
+
+            final int termCount = in.readInt();
+            final NavigableMap<String, Bitmap> terms = new TreeMap<>();
+            for(int i = 0; i < termCount; i++)  terms.put(in.readUTF(), Bitmap.read(in));
+
+            return new TagIndex(paths, terms);
+        }
+        catch(IOException ex) {
+            throw new FileTaggerException("Could not read the tag-index '"+indexFile+"'", ex);
+        }
+    }
+
+    /**
+     * Returns the paths of all files matching the passed query. The query-syntax looks like this:
+     * <ul>
+     *     <li><code>name=value</code> matches files with exactly that value, quote values with spaces
+     *     like <code>actor="Tom Hanks"</code>.</li>
+     *     <li><code>name=prefix*</code> matches all values starting with the prefix, <code>name=*</code>
+     *     matches every file with the attribute set.</li>
+     *     <li>Terms are combined with <code>AND</code>, <code>OR</code>, <code>NOT</code> and parentheses,
+     *     <code>AND</code> binds stronger than <code>OR</code>.</li>
+     * </ul>
+     * @param query The query to evaluate.
+     * @return The paths of all matching files in the order they have been indexed.
+     * @throws FileTaggerException Will be thrown if the query is malformed.
+     */
+    public List<Path> query(String query) throws FileTaggerException {
+        final Bitmap result = evaluate(query);
+        final List<Path> matches = new ArrayList<>(result.cardinality());
+        result.forEach(id -> matches.add(paths.get(id)));
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * Returns the number of files matching the passed query without resolving their paths.
+     * @see #query(String)
+     */
+    public int count(String query) throws FileTaggerException {
+        return evaluate(query).cardinality();
+    }
+
+    /**
+     * @return The number of indexed files, including the files without any attribute.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * @return The number of distinct attribute-name and -value combinations.
+     */
+    public int terms() {
+        return terms.size();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PACKAGE - The methods used by the query-parser to resolve the bitmaps of the terms.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    Bitmap term(String name, String value, boolean prefix) {
+        if(!prefix) {
+            final Bitmap bitmap = terms.get(term(name, value));
+            return bitmap == null ? new Bitmap() : bitmap;
+        }
+
+        // All terms of the name starting with the prefix are adjacent in the sorted map.
+        final String from = term(name, value);
+        Bitmap result = new Bitmap();
+        for(Map.Entry<String, Bitmap> entry : terms.tailMap(from, true).entrySet()) {
+            if(!entry.getKey().startsWith(from))  break;
+            result = result.or(entry.getValue());
+        }
+        return result;
+    }
+
+    synchronized Bitmap all() {
+        if(all == null)  all = Bitmap.range(paths.size());
+        return all;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for evaluating queries and writing the index.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Bitmap evaluate(String query) throws FileTaggerException {
+        if(query == null || query.isBlank())
+            throw new IllegalArgumentException("The passed query is null or blank!");
+
+        try {
+            return new QueryParser(this, query).parse();
+        }
+        catch(IllegalArgumentException ex) {
+            throw new FileTaggerException("Malformed query '"+query+"': "+ex.getMessage());
+        }
+    }
+
+    private void write(Path indexFile) throws IOException {
+        final Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(paths.size());
+                for(Path path : paths)  out.writeUTF(path.toString());
+
+                out.writeInt(terms.size());
+                for(Map.Entry<String, Bitmap> entry : terms.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String term(String name, String value) {
+        return name + SEPARATOR + value;
+    }
+}
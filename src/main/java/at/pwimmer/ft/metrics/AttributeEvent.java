@@ -0,0 +1,49 @@
+package at.pwimmer.ft.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <h1>Attribute Event</h1>
+ * <p>
+ *     A custom Java-Flight-Recorder event, which is committed for every attribute-syscall while a recording is
+ *     running, in example started by <code>-XX:StartFlightRecording</code> or <code>jcmd &lt;pid&gt; JFR.start</code>.
+ *     So slow syscalls on a network-share can be correlated with GC-pauses or the threads of a scan in JDK Mission Control.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The event is only created if a recording has it enabled, so it costs nothing otherwise.
+ * </p>
+ */
+@Name("at.pwimmer.ft.AttributeOperation")
+@Label("Attribute Operation")
+@Category({"File-Tagger", "Attributes"})
+@Description("A syscall on the user-defined attributes of a file")
+@StackTrace(false)
+class AttributeEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    @Label("Attribute")
+    String attribute;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("Failed")
+    boolean failed;
+}
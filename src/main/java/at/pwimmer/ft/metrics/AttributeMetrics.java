@@ -0,0 +1,166 @@
+package at.pwimmer.ft.metrics;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Attribute Metrics</h1>
+ * <p>
+ *     Collects process-wide metrics of all attribute-syscalls done by the {@link at.pwimmer.ft.FileTaggerUtils},
+ *     the sessions and the scanners: the number of calls and failures, the moved bytes and a
+ *     {@link LatencyHistogram} per {@link Operation}. So a slow run can be explained by looking at the numbers,
+ *     in example many slow reads point to the disk, while few fast reads point to the code.
+ * </p>
+ * <p>
+ *     Recording only costs two <code>System.nanoTime()</code>-calls and a few {@link LongAdder}-increments per
+ *     syscall, so the metrics are always collected. While a flight-recording is running, an {@link AttributeEvent}
+ *     is committed for each syscall as well.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The <code>--stats</code> option of the command-line prints the {@link #summary()} at exit.
+ * </p>
+ */
+public final class AttributeMetrics {
+    private static final Map<Operation, Stats> STATS = new EnumMap<>(Operation.class);
+    private static final AttributeEvent PROBE = new AttributeEvent();
+
+    static {
+        for(Operation operation : Operation.values())  STATS.put(operation, new Stats());
+    }
+
+    private AttributeMetrics() {
+        // private constructor, because this class only offers static methods.
+    }
+
+    /**
+     * The attribute-syscalls, which are measured separately.
+     */
+    public enum Operation {
+        LIST, SIZE, READ, WRITE, DELETE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @return The start-timestamp of an operation, which has to be passed to {@link #record} or {@link #failed}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a successful operation, which has been started at the passed timestamp.
+     * @param operation The measured operation.
+     * @param start The timestamp returned by {@link #start()} before the syscall.
+     * @param bytes The number of attribute-bytes read or written, zero for the other operations.
+     * @param path The path of the file, only used for the flight-recorder event.
+     * @param attributeName The name of the attribute, or <code>null</code> for listing the names.
+     */
+    public static void record(Operation operation, long start, long bytes, Path path, String attributeName) {
+        final long latency = System.nanoTime() - start;
+        final Stats stats = STATS.get(operation);
+        stats.latencies.record(latency);
+        if(bytes > 0)  stats.bytes.add(bytes);
+        if(PROBE.isEnabled())  commit(operation, latency, bytes, path, attributeName, false);
+    }
+
+    /**
+     * Records a failed operation, its latency is part of the histogram like the one of a successful operation.
+     * @see #record(Operation, long, long, Path, String)
+     */
+    public static void failed(Operation operation, long start, Path path, String attributeName) {
+        final long latency = System.nanoTime() - start;
+        final Stats stats = STATS.get(operation);
+        stats.latencies.record(latency);
+        stats.failures.increment();
+        if(PROBE.isEnabled())  commit(operation, latency, 0, path, attributeName, true);
+    }
+
+    public static long getCalls(Operation operation) {
+        return STATS.get(operation).latencies.getCount();
+    }
+
+    public static long getFailures(Operation operation) {
+        return STATS.get(operation).failures.sum();
+    }
+
+    public static long getBytes(Operation operation) {
+        return STATS.get(operation).bytes.sum();
+    }
+
+    public static LatencyHistogram getLatencies(Operation operation) {
+        return STATS.get(operation).latencies;
+    }
+
+    /**
+     * Resets all collected metrics, in example before measuring a single run within a long-running daemon.
+     */
+    public static void reset() {
+        for(Stats stats : STATS.values()) {
+            stats.latencies.reset();
+            stats.failures.reset();
+            stats.bytes.reset();
+        }
+    }
+
+    /**
+     * Formats the collected metrics as table, with one line per operation which has been called at least once.
+     * @return The formatted table, ending with a line-break.
+     */
+    public static String summary() {
+        if(STATS.values().stream().allMatch(stats -> stats.latencies.getCount() == 0))
+            return String.format("No attribute-operations have been recorded%n");
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-8s %10s %8s %12s %9s %9s %9s %9s %9s%n",
+                "op", "calls", "failed", "bytes", "mean", "p50", "p90", "p99", "max"));
+
+        for(Operation operation : Operation.values()) {
+            final Stats stats = STATS.get(operation);
+            final LatencyHistogram latencies = stats.latencies;
+            if(latencies.getCount() == 0)  continue;
+
+            builder.append(String.format(Locale.ROOT, "%-8s %10d %8d %12d %9s %9s %9s %9s %9s%n",
+                    operation.label(), latencies.getCount(), stats.failures.sum(), stats.bytes.sum(),
+                    duration(latencies.getMeanNanos()), duration(latencies.getPercentileNanos(50)),
+                    duration(latencies.getPercentileNanos(90)), duration(latencies.getPercentileNanos(99)),
+                    duration(latencies.getMaxNanos())));
+        }
+        return builder.toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for committing the events and formatting the summary.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static void commit(Operation operation, long latency, long bytes, Path path, String attributeName, boolean failed) {
+        final AttributeEvent event = new AttributeEvent();
+        event.operation = operation.label();
+        event.path = path == null ? null : path.toString();
+        event.attribute = attributeName;
+        event.bytes = bytes;
+        event.latency = latency;
+        event.failed = failed;
+        event.commit();
+    }
+
+    private static String duration(long nanos) {
+        if(nanos < 1_000)  return nanos+"ns";
+        if(nanos < 1_000_000)  return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        if(nanos < 1_000_000_000)  return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+
+    private static class Stats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+}
@@ -0,0 +1,84 @@
+package at.pwimmer.ft.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Latency Histogram</h1>
+ * <p>
+ *     A lock-free histogram of latencies with logarithmic buckets. Bucket <em>i</em> counts all latencies between
+ *     2<sup>i-1</sup> and 2<sup>i</sup> nanoseconds, so recording a value only costs a leading-zero count and a few
+ *     {@link LongAdder}-increments, which stay cheap even if many scanning threads record at the same time.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Percentiles are estimated by the upper bound of their bucket, so they are exact to a factor
+ *     of two. This is precise enough to tell a 50&micro;s read of a local SSD apart from a 5ms read over the network.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for(int i = 0; i < BUCKETS; i++)  buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        final long n = count.sum();
+        return n == 0 ? 0 : total.sum() / n;
+    }
+
+    /**
+     * Estimates the passed percentile by the upper bound of the bucket containing it.
+     * @param percentile The percentile between 0 and 100, in example 99 for the p99-latency.
+     * @return The estimated latency in nanoseconds, or zero if nothing has been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        final long n = count.sum();
+        if(n == 0)  return 0;
+
+        final long rank = (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100.0);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if(seen >= rank)  return Math.min(upperBound(i), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    public void reset() {
+        for(LongAdder bucket : buckets)  bucket.reset();
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    private static long upperBound(int bucket) {
+        if(bucket == 0)  return 0;
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+}
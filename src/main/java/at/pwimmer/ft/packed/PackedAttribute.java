@@ -0,0 +1,428 @@
+package at.pwimmer.ft.packed;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <h1>Packed Attribute</h1>
+ * <p>
+ *     Packs many fields of a file, like its actors, categories and year, into the value of one single
+ *     user-defined attribute. So all metadata of a file is read with one syscall, and listing the attributes
+ *     does not grow with every new field. A field holds a string, a list of strings or a long.
+ * </p>
+ * <p>
+ *     The encoding is versioned and starts with the byte <code>0xFF</code>, which never occurs in UTF-8, so a packed
+ *     value can be told apart from a plain string value. It is followed by the version-byte, the number of fields and
+ *     the fields in the order they have been put. Every field consists of its name, a type-byte and the length of
+ *     its payload, all lengths and longs are written as variable-length ints. Because of the payload-length, a
+ *     getter skips all other fields without decoding them, so reading one field never decodes the whole value.
+ * </p>
+ * <p>
+ *     <b>Note</b>: A packed attribute is immutable, use {@link #toBuilder()} to change some of its fields. The plain
+ *     read-methods return its raw bytes as string, only
+ *     {@link at.pwimmer.ft.FileTaggerUtils#readPackedAttributeFrom} decodes the fields.
+ * </p>
+ */
+public final class PackedAttribute {
+    static final int MAGIC = 0xFF;
+    static final int VERSION = 1;
+    static final byte STRING = 1;
+    static final byte LIST = 2;
+    static final byte LONG = 3;
+
+    private final byte[] bytes;
+
+    private PackedAttribute(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Checks if the passed raw attribute-value starts like a packed attribute.
+     */
+    public static boolean isPacked(byte[] value) {
+        return value != null && isPacked(value, value.length);
+    }
+
+    /**
+     * Checks if the first <em>length</em> bytes of the passed array start like a packed attribute.
+     */
+    public static boolean isPacked(byte[] value, int length) {
+        return length >= 2 && (value[0] & 0xFF) == MAGIC;
+    }
+
+    /**
+     * Wraps the passed raw attribute-value, the fields are only decoded when they are accessed.
+     * @param value The raw value of a packed attribute, which must not be modified afterwards.
+     * @return The wrapping attribute.
+     * @throws IllegalArgumentException Will be thrown if the value is not a packed attribute, has another version
+     *                                  or is malformed, in example a plain value which only starts like a packed one.
+     */
+    public static PackedAttribute decode(byte[] value) {
+        if(!isPacked(value))
+            throw new IllegalArgumentException("The passed value is not a packed attribute!");
+        if(value[1] != VERSION)
+            throw new IllegalArgumentException("The packed attribute has the unsupported version "+value[1]+"!");
+
+        // Check the structure once, so the lazy accessors never read outside of the value.
+        validate(value);
+        return new PackedAttribute(value);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The names of all fields in the order they have been put.
+     */
+    public Set<String> names() {
+        final Set<String> names = new LinkedHashSet<>();
+        final Cursor cursor = new Cursor(bytes);
+        for(int i = cursor.start(); i > 0; i--) {
+            final int nameLength = cursor.length();
+            names.add(new String(bytes, cursor.position, nameLength, StandardCharsets.UTF_8));
+            cursor.skipField(nameLength);
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    public boolean has(String name) {
+        return find(name) != null;
+    }
+
+    /**
+     * @return The string-value of the field, or <code>null</code> if the field is not set.
+     * @throws IllegalArgumentException Will be thrown if the field is not a string.
+     */
+    public String getString(String name) {
+        final Cursor field = find(name);
+        if(field == null)  return null;
+        if(field.type != STRING)
+            throw new IllegalArgumentException("The field '"+name+"' is not a string!");
+
+        return new String(bytes, field.position, field.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The list-values of the field, a string-field is returned as list of one value,
+     * or <code>null</code> if the field is not set.
+     * @throws IllegalArgumentException Will be thrown if the field is a long.
+     */
+    public List<String> getList(String name) {
+        final Cursor field = find(name);
+        if(field == null)  return null;
+        if(field.type == STRING)  return List.of(new String(bytes, field.position, field.length, StandardCharsets.UTF_8));
+        if(field.type != LIST)
+            throw new IllegalArgumentException("The field '"+name+"' is not a list!");
+
+        final int count = field.length();
+        final List<String> values = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            final int length = field.length();
+            values.add(new String(bytes, field.position, length, StandardCharsets.UTF_8));
+            field.position += length;
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return The long-value of the field, or <code>null</code> if the field is not set.
+     * @throws IllegalArgumentException Will be thrown if the field is not a long.
+     */
+    public Long getLong(String name) {
+        final Cursor field = find(name);
+        if(field == null)  return null;
+        if(field.type != LONG)
+            throw new IllegalArgumentException("The field '"+name+"' is not a long!");
+
+        final long zigzag = field.varlong();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * @return The value of the field as {@link String}, {@link List} of strings or {@link Long} depending on its
+     * type, or <code>null</code> if the field is not set.
+     */
+    public Object get(String name) {
+        final Cursor field = find(name);
+        if(field == null)  return null;
+        return field.type == STRING ? getString(name) : field.type == LIST ? getList(name) : getLong(name);
+    }
+
+    /**
+     * @return A builder containing all fields of this attribute, in example to change or add single fields.
+     */
+    public Builder toBuilder() {
+        final Builder builder = new Builder();
+        for(String name : names()) {
+            final Cursor field = find(name);
+            if(field.type == STRING)  builder.put(name, getString(name));
+            else if(field.type == LIST)  builder.put(name, getList(name));
+            else  builder.put(name, getLong(name).longValue());
+        }
+        return builder;
+    }
+
+    /**
+     * @return A copy of the encoded bytes, which are written as attribute-value.
+     */
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Formats all fields like <code>{actors=[Tom Hanks, Meg Ryan], year=1998}</code>, in example for logging.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        for(String name : names()) {
+            if(builder.length() > 1)  builder.append(", ");
+            builder.append(name).append('=').append(get(name));
+        }
+        return builder.append('}').toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PackedAttribute && Arrays.equals(bytes, ((PackedAttribute) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for finding a field without decoding the others.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static void validate(byte[] value) {
+        final Cursor cursor = new Cursor(value);
+        for(int i = cursor.start(); i > 0; i--) {
+            final int nameLength = cursor.length();
+            checkName(value, cursor.position, nameLength);
+            cursor.position += nameLength;
+            if(cursor.position >= value.length)
+                throw new IllegalArgumentException("The packed attribute is truncated!");
+
+            final byte type = value[cursor.position++];
+            final int payload = cursor.length();
+            final int end = cursor.position + payload;
+            if(type == LIST) {
+                for(int count = cursor.length(); count > 0; count--) {
+                    final int length = cursor.length();
+                    cursor.position += length;
+                }
+            }
+            else if(type == LONG) {
+                cursor.varlong();
+            }
+            else if(type != STRING) {
+                throw new IllegalArgumentException("The packed attribute contains the unknown field-type "+type+"!");
+            }
+
+            if(cursor.position > end)
+                throw new IllegalArgumentException("The packed attribute contains a field exceeding its length!");
+            cursor.position = end;
+        }
+
+        if(cursor.position != value.length)
+            throw new IllegalArgumentException("The packed attribute contains trailing bytes!");
+    }
+
+    private static void checkName(byte[] value, int offset, int length) {
+        // The names are looked up by their encoding, so they have to be decoded without any replacement.
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(value, offset, length));
+        }
+        catch(CharacterCodingException ex) {
+            throw new IllegalArgumentException("The packed attribute contains a field-name which is no UTF-8!", ex);
+        }
+    }
+
+    private Cursor find(String name) {
+        if(name == null)
+            throw new IllegalArgumentException("The passed field-name is null!");
+
+        final byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+        final Cursor cursor = new Cursor(bytes);
+        for(int i = cursor.start(); i > 0; i--) {
+            final int nameLength = cursor.length();
+            if(nameLength == expected.length && Arrays.equals(bytes, cursor.position, cursor.position + nameLength, expected, 0, nameLength)) {
+                cursor.position += nameLength;
+                cursor.type = bytes[cursor.position++];
+                cursor.length = cursor.length();
+                return cursor;
+            }
+            cursor.skipField(nameLength);
+        }
+        return null;
+    }
+
+    private static final class Cursor {
+        private final byte[] bytes;
+        private int position;
+        private byte type;
+        private int length;
+
+        Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int start() {
+            position = 2;
+            return length();
+        }
+
+        void skipField(int nameLength) {
+            position += nameLength + 1;
+            final int payload = length();
+            position += payload;
+        }
+
+        /**
+         * Reads a length or count, which can never be larger than the remaining bytes.
+         */
+        int length() {
+            final long length = varlong();
+            if(length < 0 || length > bytes.length - position)
+                throw new IllegalArgumentException("The packed attribute is truncated!");
+            return (int) length;
+        }
+
+        long varlong() {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                if(position >= bytes.length)
+                    throw new IllegalArgumentException("The packed attribute is truncated!");
+
+                final byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if(b >= 0)  return value;
+            }
+            throw new IllegalArgumentException("The packed attribute contains a malformed number!");
+        }
+    }
+
+    /**
+     * Collects the fields of a new packed attribute. Putting a field with an existing name replaces its value.
+     */
+    public static final class Builder {
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+
+        private Builder() {
+            // private constructor, use PackedAttribute.builder() or toBuilder() instead.
+        }
+
+        public Builder put(String name, String value) {
+            if(value == null)
+                throw new IllegalArgumentException("The passed value is null!");
+            fields.put(validate(name), value);
+            return this;
+        }
+
+        public Builder put(String name, List<String> values) {
+            if(values == null || values.stream().anyMatch(Objects::isNull))
+                throw new IllegalArgumentException("The passed values are null or contain null!");
+            fields.put(validate(name), new ArrayList<>(values));
+            return this;
+        }
+
+        public Builder put(String name, long value) {
+            fields.put(validate(name), value);
+            return this;
+        }
+
+        public Builder remove(String name) {
+            fields.remove(name);
+            return this;
+        }
+
+        public PackedAttribute build() {
+            final Output out = new Output();
+            out.bytes[out.size++] = (byte) MAGIC;
+            out.bytes[out.size++] = VERSION;
+            out.varlong(fields.size());
+
+            final Output payload = new Output();
+            for(Map.Entry<String, Object> field : fields.entrySet()) {
+                payload.size = 0;
+                final byte type;
+                if(field.getValue() instanceof String) {
+                    type = STRING;
+                    payload.write(((String) field.getValue()).getBytes(StandardCharsets.UTF_8));
+                }
+                else if(field.getValue() instanceof List) {
+                    type = LIST;
+                    final List<?> values = (List<?>) field.getValue();
+                    payload.varlong(values.size());
+                    for(Object value : values)  payload.string(value.toString());
+                }
+                else {
+                    type = LONG;
+                    final long value = (Long) field.getValue();
+                    payload.varlong((value << 1) ^ (value >> 63));
+                }
+
+                out.string(field.getKey());
+                out.write(new byte[] {type});
+                out.varlong(payload.size);
+                out.write(Arrays.copyOf(payload.bytes, payload.size));
+            }
+            return new PackedAttribute(Arrays.copyOf(out.bytes, out.size));
+        }
+
+        private static String validate(String name) {
+            if(name == null || name.isEmpty())
+                throw new IllegalArgumentException("The passed field-name is null or empty!");
+            return name;
+        }
+    }
+
+    private static final class Output {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        void write(byte[] data) {
+            ensure(data.length);
+            System.arraycopy(data, 0, bytes, size, data.length);
+            size += data.length;
+        }
+
+        void string(String value) {
+            final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            varlong(data.length);
+            write(data);
+        }
+
+        void varlong(long value) {
+            ensure(10);
+            while((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int length) {
+            if(size + length > bytes.length)  bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+    }
+}
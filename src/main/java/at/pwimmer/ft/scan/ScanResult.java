@@ -0,0 +1,49 @@
+package at.pwimmer.ft.scan;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The summary of a single {@link TreeScanner#scan} run. It counts the visited and matched files and
+ * collects the error-message of each file or directory which could not be read.
+ * <p>
+ * All methods are thread-safe, because the counters are updated concurrently by the scanning workers.
+ */
+public class ScanResult {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder tagged = new LongAdder();
+    private final Map<Path, String> failures = new ConcurrentHashMap<>();
+
+    void fileScanned(boolean hasAttributes) {
+        files.increment();
+        if(hasAttributes)  tagged.increment();
+    }
+
+    void failed(Path path, String message) {
+        failures.put(path, message);
+    }
+
+    /**
+     * @return The number of regular files, which matched the include/exclude globs and have been read.
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return The number of read files, which did have at least one (requested) attribute set.
+     */
+    public long getTaggedFiles() {
+        return tagged.sum();
+    }
+
+    /**
+     * @return An unmodifiable map of each failed path and the message why it could not be read.
+     */
+    public Map<Path, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+}
@@ -0,0 +1,321 @@
+package at.pwimmer.ft.scan;
+
+import at.pwimmer.ft.AttributeSession;
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.schedule.IoScheduler;
+import at.pwimmer.ft.sidecar.SidecarAttributeView;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Tree Scanner</h1>
+ * <p>
+ *     Walks a directory tree and reads the user-defined attributes of every regular file in parallel.
+ *     The work is distributed on a work-stealing {@link ForkJoinPool}: every directory is listed by its own task,
+ *     its sub-directories are forked as new tasks and its files are split into small batches, so even a flat
+ *     directory with thousands of movies keeps all workers (and therefore the disk-queue) busy.
+ * </p>
+ * <p>
+ *     The include- and exclude-globs are matched against the path relative to the scanned root, in example
+ *     <code>**.mp4</code> or <code>trailers</code>. A directory matching an exclude-glob will not be descended.
+ * </p>
+ * <p>
+ *     By default, the scanner lists the tree first and then reads the files through the shared
+ *     {@link IoScheduler#getCurrent()}, grouped by directory, sorted by inode and with a concurrency adapting to
+ *     the latency of each drive, so spinning disks and network-shares need no manual tuning. Without a current
+ *     scheduler, the files are read right away by the workers listing them.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The passed consumer will be called concurrently from the worker-threads and must be thread-safe.
+ * </p>
+ */
+public class TreeScanner {
+    private static final int BATCH_SIZE = 32;
+
+    private final int parallelism;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final String attributeName;
+    private final IoScheduler scheduler;
+
+    /**
+     * Creates a new scanner, which reads all attributes of each file using all available processors.
+     */
+    public TreeScanner() {
+        this(Runtime.getRuntime().availableProcessors(), null, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Creates a new scanner with the passed concurrency-limit and file-filters, which reads through the current
+     * {@link IoScheduler}, if there is one.
+     * @param parallelism The maximum number of directories listed concurrently, and of files read concurrently
+     *                    without a current scheduler, must be at least one.
+     * @param attributeName The name of the only attribute to report, or <code>null</code> to report all attributes.
+     * @param includes The globs of which one must match a file to be read, an empty list includes all files.
+     * @param excludes The globs of which none may match a file or directory to be read.
+     */
+    public TreeScanner(int parallelism, String attributeName, List<String> includes, List<String> excludes) {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("The passed parallelism must be at least one!");
+        if(attributeName != null && attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is blank!");
+
+        this.parallelism = parallelism;
+        this.attributeName = attributeName;
+        this.includes = toMatchers(includes);
+        this.excludes = toMatchers(excludes);
+        this.scheduler = IoScheduler.getCurrent();
+    }
+
+    /**
+     * Creates a new scanner, which lists the whole tree with one thread and then reads the files through the passed
+     * {@link IoScheduler}. The files are read in the order of their position on the disk, with a concurrency
+     * adapting to the latency of each file-store.
+     * @param scheduler The scheduler to read the files with.
+     * @param attributeName The name of the only attribute to report, or <code>null</code> to report all attributes.
+     * @param includes The globs of which one must match a file to be read, an empty list includes all files.
+     * @param excludes The globs of which none may match a file or directory to be read.
+     */
+    public TreeScanner(IoScheduler scheduler, String attributeName, List<String> includes, List<String> excludes) {
+        if(scheduler == null)
+            throw new IllegalArgumentException("The passed scheduler is null!");
+        if(attributeName != null && attributeName.isBlank())
+            throw new IllegalArgumentException("The passed attribute-name is blank!");
+
+        this.parallelism = 1;
+        this.attributeName = attributeName;
+        this.includes = toMatchers(includes);
+        this.excludes = toMatchers(excludes);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Scans the tree below the passed <em>root</em> and calls the passed consumer for each file, which does
+     * have at least one (or the requested) attribute set. Files and directories which could not be read will
+     * not abort the scan, but are reported by the returned {@link ScanResult}.
+     * @param root The root directory to scan.
+     * @param consumer The thread-safe consumer receiving each path and its attributes.
+     * @return The summary of the scan.
+     */
+    public ScanResult scan(Path root, BiConsumer<Path, Map<String, String>> consumer) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+        if(consumer == null)
+            throw new IllegalArgumentException("The passed consumer is null!");
+
+        final ScanResult result = new ScanResult();
+        walk(root, result, this::readFile, (file, attributes) -> {
+            result.fileScanned(!attributes.isEmpty());
+            if(!attributes.isEmpty())  consumer.accept(file, attributes);
+        });
+        return result;
+    }
+
+    /**
+     * Scans the tree below the passed <em>root</em> for all files, whose attribute with the passed
+     * <em>attributeName</em> equals the passed <em>value</em>. The value is compared on the raw UTF-8 bytes
+     * in a per-thread buffer, so no strings will be created for the read attributes.
+     * @param root The root directory to scan.
+     * @param attributeName The name of the attribute to compare, in example <code>uuid</code>.
+     * @param value The value the attribute has to match.
+     * @param consumer The thread-safe consumer receiving each matching path.
+     * @return The summary of the scan, where tagged files are the matching ones.
+     */
+    public ScanResult find(Path root, String attributeName, String value, Consumer<Path> consumer) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+        if(attributeName == null || attributeName.isBlank() || value == null)
+            throw new IllegalArgumentException("The passed attribute-name or value is null or blank!");
+        if(consumer == null)
+            throw new IllegalArgumentException("The passed consumer is null!");
+
+        final byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+        final ScanResult result = new ScanResult();
+        walk(root, result, file -> FileTaggerUtils.openSession(file).matches(attributeName, expected), (file, matches) -> {
+            result.fileScanned(matches);
+            if(matches)  consumer.accept(file);
+        });
+        return result;
+    }
+
+    /**
+     * Calls the passed visitor with a new {@link AttributeSession} for every file below the passed <em>root</em>,
+     * including the files without any attribute. This allows custom passes over the whole tree, in example
+     * writing attributes based on the content of the files.
+     * @param root The root directory to scan.
+     * @param visitor The thread-safe visitor called for each file.
+     * @return The summary of the scan, where tagged files are the ones the visitor returned <code>true</code> for.
+     */
+    public ScanResult visit(Path root, SessionVisitor visitor) {
+        if(root == null || !Files.isDirectory(root))
+            throw new IllegalArgumentException("The passed root is null or not a directory!");
+        if(visitor == null)
+            throw new IllegalArgumentException("The passed visitor is null!");
+
+        final ScanResult result = new ScanResult();
+        walk(root, result, file -> visitor.visit(FileTaggerUtils.openSession(file)), (file, tagged) -> result.fileScanned(tagged));
+        return result;
+    }
+
+    /**
+     * The action of {@link #visit(Path, SessionVisitor)}, which is called concurrently for every file.
+     */
+    @FunctionalInterface
+    public interface SessionVisitor {
+        /**
+         * @param session The new session on the visited file.
+         * @return Whether the file should be counted as tagged by the {@link ScanResult}.
+         * @throws FileTaggerException Will be thrown if the file could not be processed, which is reported as failure.
+         * @throws IOException Will be thrown if the file could not be processed, which is reported as failure.
+         */
+        boolean visit(AttributeSession session) throws FileTaggerException, IOException;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private tasks and helpers for listing directories and reading the file-attributes.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private <T> void walk(Path root, ScanResult result, IoScheduler.FileTask<T> read, BiConsumer<Path, T> consumer) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            if(scheduler == null) {
+                pool.invoke(new DirectoryTask(root, root, file -> {
+                    try {
+                        consumer.accept(file, read.run(file));
+                    }
+                    catch(FileTaggerException | IOException | RuntimeException ex) {
+                        result.failed(file, ex.getMessage());
+                    }
+                }, result));
+                return;
+            }
+
+            // Collect the whole tree first, so the scheduler can order the files by their position on the disk.
+            // Only the reads are timed by the scheduler, the consumer runs after the drive has been released.
+            final List<Path> files = Collections.synchronizedList(new ArrayList<>());
+            pool.invoke(new DirectoryTask(root, root, files::add, result));
+            scheduler.run(files, read, consumer).getFailures().forEach(result::failed);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private boolean isExcluded(Path relative) {
+        for(PathMatcher matcher : excludes) {
+            if(matcher.matches(relative))  return true;
+        }
+        return false;
+    }
+
+    private boolean isIncluded(Path relative) {
+        if(includes.isEmpty())  return true;
+
+        for(PathMatcher matcher : includes) {
+            if(matcher.matches(relative))  return true;
+        }
+        return false;
+    }
+
+    private Map<String, String> readFile(Path file) throws FileTaggerException {
+        // One session lists the names once and only reads the requested attribute, if there is one.
+        final AttributeSession session = FileTaggerUtils.openSession(file);
+        return attributeName == null ? session.readAll() : session.readAll(Collections.singletonList(attributeName));
+    }
+
+    private static List<PathMatcher> toMatchers(List<String> globs) {
+        if(globs == null || globs.isEmpty())  return Collections.emptyList();
+
+        final FileSystem fs = FileSystems.getDefault();
+        final List<PathMatcher> matchers = new ArrayList<>(globs.size());
+        for(String glob : globs)  matchers.add(fs.getPathMatcher("glob:" + glob));
+        return matchers;
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path directory;
+        private final Consumer<Path> action;
+        private final ScanResult result;
+
+        DirectoryTask(Path root, Path directory, Consumer<Path> action, ScanResult result) {
+            this.root = root;
+            this.directory = directory;
+            this.action = action;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            final List<Path> files = new ArrayList<>();
+
+            // List the directory once, fork each sub-directory and collect the matching regular files.
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for(Path entry : stream) {
+                    final Path relative = root.relativize(entry);
+                    if(isExcluded(relative))  continue;
+
+                    final BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if(attrs.isDirectory()) {
+                        tasks.add(new DirectoryTask(root, entry, action, result));
+                    }
+                    else if(attrs.isRegularFile() && isIncluded(relative) && !SidecarAttributeView.isSidecar(entry)) {
+                        files.add(entry);
+                    }
+                }
+            }
+            catch(IOException ex) {
+                result.failed(directory, "Could not list directory '"+directory+"': "+ex.getMessage());
+            }
+
+            for(int from = 0; from < files.size(); from += BATCH_SIZE)
+                tasks.add(new FileBatchTask(files, from, Math.min(from + BATCH_SIZE, files.size()), action));
+
+            invokeAll(tasks);
+        }
+    }
+
+    private class FileBatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+        private final Consumer<Path> action;
+
+        FileBatchTask(List<Path> files, int from, int to, Consumer<Path> action) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            for(int i = from; i < to; i++)  action.accept(files.get(i));
+        }
+    }
+}
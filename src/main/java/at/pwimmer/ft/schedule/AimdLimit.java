@@ -0,0 +1,75 @@
+package at.pwimmer.ft.schedule;
+
+/**
+ * An adaptive concurrency-limit for one file-store, following the additive-increase/multiplicative-decrease scheme
+ * of TCP. Every finished call reports its latency: as long as the smoothed latency stays close to the fastest
+ * latency seen, the limit grows by one per window of <em>limit</em> calls. As soon as the device starts queueing,
+ * the latency rises above the tolerance and the limit is cut down by a quarter, at most once per window.
+ * <p>
+ * Latencies below half a millisecond never count as congestion, they are served from caches or flash-storage,
+ * where more concurrency does not cost seeks. The baseline drifts slowly upwards, so a device which has become
+ * slower in general (in example a NAS under load of other clients) is learned again.
+ */
+final class AimdLimit {
+    static final long FAST_NANOS = 500_000;
+    private static final double TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.75;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private int limit;
+    private int inFlight;
+    private int successes;
+    private int sinceDecrease;
+    private long baseline;
+    private long smoothed;
+
+    AimdLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Blocks until less calls than the current limit are running and reserves a slot for the next one.
+     */
+    synchronized void acquire() throws InterruptedException {
+        while(inFlight >= limit)  wait();
+        inFlight++;
+    }
+
+    /**
+     * Frees the slot of a finished call and adapts the limit to its latency.
+     * @param latencyNanos The duration of the call in nanoseconds.
+     * @param failed Whether the call has failed, which is treated like a congested device.
+     */
+    synchronized void release(long latencyNanos, boolean failed) {
+        inFlight--;
+        sample(latencyNanos, failed);
+        notifyAll();
+    }
+
+    synchronized void sample(long latencyNanos, boolean failed) {
+        if(baseline == 0 || latencyNanos < baseline)  baseline = latencyNanos;
+        else  baseline += (latencyNanos - baseline) >> 8;
+        smoothed = smoothed == 0 ? latencyNanos : smoothed + (latencyNanos - smoothed) / 4;
+
+        sinceDecrease++;
+        if(failed || smoothed > Math.max(baseline, FAST_NANOS) * TOLERANCE) {
+            // The slow calls of one congestion arrive together, so only back off once per window.
+            if(sinceDecrease >= limit) {
+                limit = Math.max(minLimit, (int) (limit * BACKOFF));
+                sinceDecrease = 0;
+            }
+            successes = 0;
+        }
+        else if(++successes >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+            successes = 0;
+        }
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,308 @@
+package at.pwimmer.ft.schedule;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>I/O Scheduler</h1>
+ * <p>
+ *     Runs a task for many files in an order and with a concurrency that suits the storage they are on.
+ *     Reading attributes with a fixed, high parallelism is fast on flash-storage, but makes a spinning disk seek
+ *     between random inodes all the time and overloads a network-share. So the files are grouped by their directory,
+ *     the directories are visited in sorted order and the files of a directory are sorted by their inode-number,
+ *     which is close to their position on the disk for most filesystems.
+ * </p>
+ * <p>
+ *     Each file-store (mount point) gets its own adaptive concurrency-limit, which starts small and grows as long as
+ *     the latency of the calls does not rise, but is cut down as soon as the device starts queueing. The limits are
+ *     kept by the scheduler, so a second run on the same drive starts with the limit learned by the first one.
+ * </p>
+ * <p>
+ *     The scheduler returned by {@link #getCurrent()} is used by default for all multi-file operations, like the
+ *     scans of the {@link at.pwimmer.ft.scan.TreeScanner} and the exports. It is shared by the whole process,
+ *     so only a long-running process like the daemon carries the learned limits from one run to the next.
+ *     Passing <code>-Dft.scheduler=fixed</code> or setting <code>null</code> reads with a fixed parallelism.
+ * </p>
+ * <p>
+ *     <b>Note</b>: Planning costs one <em>stat</em> per file to read its inode, where the platform offers no inodes
+ *     the files of a directory are sorted by name instead.
+ * </p>
+ */
+public class IoScheduler {
+    private static final int INITIAL_LIMIT = 2;
+    private static volatile boolean inodesSupported = true;
+    private static volatile IoScheduler current = "fixed".equalsIgnoreCase(System.getProperty("ft.scheduler")) ? null : new IoScheduler();
+
+    private final int maxConcurrency;
+    private final Map<Object, AimdLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new scheduler, which runs at most four times the available processors calls per file-store.
+     */
+    public IoScheduler() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Creates a new scheduler with the passed upper bound of the adaptive limits.
+     * @param maxConcurrency The maximum number of calls running concurrently on one file-store, must be at least one.
+     */
+    public IoScheduler(int maxConcurrency) {
+        if(maxConcurrency < 1)
+            throw new IllegalArgumentException("The passed maximum concurrency must be at least one!");
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return The scheduler shared by all multi-file operations, or <code>null</code> if they use a fixed parallelism.
+     */
+    public static IoScheduler getCurrent() {
+        return current;
+    }
+
+    /**
+     * Sets the scheduler shared by all multi-file operations, <code>null</code> reads with a fixed parallelism.
+     */
+    public static void setCurrent(IoScheduler scheduler) {
+        current = scheduler;
+    }
+
+    /**
+     * Runs the passed task for each of the passed files and blocks until all of them are done. The files of
+     * different file-stores are processed at the same time, each store with its own concurrency-limit.
+     * A failed task does not abort the run, but is reported by the returned {@link ScheduleResult}.
+     * @param files The files to process, duplicates are processed once per occurrence.
+     * @param task The thread-safe task called for each file.
+     * @return The summary of the run.
+     */
+    public ScheduleResult run(Collection<Path> files, FileTask<?> task) {
+        return run(files, task, (file, value) -> {});
+    }
+
+    /**
+     * Runs the passed task for each of the passed files and passes its result to the consumer, blocking until all
+     * of them are done. Only the task is timed and counts against the concurrency-limit, the consumer is called
+     * after the file-store has been released, so a slow consumer is never mistaken for a congested device.
+     * Only failed I/O counts like a congested device, a missing file or attribute does not.
+     * @param files The files to process, duplicates are processed once per occurrence.
+     * @param task The thread-safe task called for each file, which should only do the I/O.
+     * @param consumer The thread-safe consumer receiving each file and the result of its task.
+     * @param <T> The type of the results of the task.
+     * @return The summary of the run, where a failed task or consumer is reported as failure.
+     */
+    public <T> ScheduleResult run(Collection<Path> files, FileTask<T> task, BiConsumer<Path, ? super T> consumer) {
+        if(files == null)
+            throw new IllegalArgumentException("The passed files are null!");
+        if(task == null || consumer == null)
+            throw new IllegalArgumentException("The passed task or consumer is null!");
+
+        final ScheduleResult result = new ScheduleResult();
+        final Map<AimdLimit, List<Path>> plan = plan(files);
+        final CountDownLatch done = new CountDownLatch(files.size());
+        final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "file-tagger-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // One dispatcher per file-store hands its files in planned order to the workers, as far as its limit allows.
+            plan.forEach((limit, ordered) -> workers.execute(() -> dispatch(limit, ordered, task, consumer, workers, result, done)));
+            done.await();
+        }
+        catch(InterruptedException ex) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            workers.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * @return The current concurrency-limit of each file-store, which has been used by this scheduler.
+     */
+    public Map<String, Integer> getLimits() {
+        final Map<String, Integer> current = new TreeMap<>();
+        limits.forEach((store, limit) -> current.put(store.toString(), limit.getLimit()));
+        return current;
+    }
+
+    /**
+     * The timed I/O of {@link #run(Collection, FileTask, BiConsumer)}, which is called concurrently for every file.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface FileTask<T> {
+        /**
+         * @param file The file to process.
+         * @return The result passed on to the consumer of the run.
+         * @throws FileTaggerException Will be thrown if the file could not be processed, which is reported as failure.
+         * @throws IOException Will be thrown if the file could not be processed, which is reported as failure.
+         */
+        T run(Path file) throws FileTaggerException, IOException;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for planning the order and dispatching the files to the workers.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Groups the files by their file-store in the order, in which they should be processed.
+     */
+    Map<AimdLimit, List<Path>> plan(Collection<Path> files) {
+        // Sorted by path, so the sub-directories of a directory are visited right after it.
+        final Map<Path, List<Path>> directories = new TreeMap<>();
+        for(Path file : files) {
+            final Path absolute = file.toAbsolutePath();
+            final Path parent = absolute.getParent();
+            directories.computeIfAbsent(parent != null ? parent : absolute, dir -> new ArrayList<>()).add(file);
+        }
+
+        final Map<AimdLimit, List<Path>> plan = new LinkedHashMap<>();
+        final Map<Object, AimdLimit> stores = new HashMap<>();
+        for(Map.Entry<Path, List<Path>> entry : directories.entrySet()) {
+            final Object store = storeOf(entry.getKey());
+            final AimdLimit limit = stores.computeIfAbsent(store,
+                    key -> limits.computeIfAbsent(key, k -> new AimdLimit(INITIAL_LIMIT, 1, maxConcurrency)));
+            plan.computeIfAbsent(limit, l -> new ArrayList<>()).addAll(sortByInode(entry.getValue()));
+        }
+        return plan;
+    }
+
+    private <T> void dispatch(AimdLimit limit, List<Path> files, FileTask<T> task, BiConsumer<Path, ? super T> consumer,
+                              ExecutorService workers, ScheduleResult result, CountDownLatch done) {
+        for(int i = 0; i < files.size(); i++) {
+            final Path file = files.get(i);
+            try {
+                limit.acquire();
+            }
+            catch(InterruptedException ex) {
+                // The run has been interrupted, so count down the files which will never be processed.
+                for(int j = i; j < files.size(); j++)  done.countDown();
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                workers.execute(() -> run(limit, file, task, consumer, result, done));
+            }
+            catch(RejectedExecutionException ex) {
+                // The workers have been shut down by an interrupted run, so stop dispatching.
+                limit.release(0, false);
+                for(int j = i; j < files.size(); j++)  done.countDown();
+                return;
+            }
+        }
+    }
+
+    private static <T> void run(AimdLimit limit, Path file, FileTask<T> task, BiConsumer<Path, ? super T> consumer,
+                                ScheduleResult result, CountDownLatch done) {
+        T value = null;
+        boolean succeeded = false;
+        boolean congested = false;
+        final long start = System.nanoTime();
+        try {
+            value = task.run(file);
+            succeeded = true;
+        }
+        catch(FileTaggerException | IOException | RuntimeException ex) {
+            congested = isIoError(ex);
+            result.failed(file, ex.getMessage());
+        }
+        finally {
+            limit.release(System.nanoTime() - start, congested);
+        }
+
+        // The consumer may wait for its own locks, so it runs after the file-store has been released.
+        try {
+            if(succeeded)  consumer.accept(file, value);
+        }
+        catch(RuntimeException ex) {
+            result.failed(file, ex.getMessage());
+        }
+        finally {
+            result.fileProcessed();
+            done.countDown();
+        }
+    }
+
+    private static boolean isIoError(Throwable ex) {
+        // A missing file, attribute or permission says nothing about the device, only failed calls to it do.
+        final Throwable cause = ex instanceof FileTaggerException ? ex.getCause() : ex;
+        return cause instanceof IOException && !(cause instanceof NoSuchFileException)
+                && !(cause instanceof AccessDeniedException) && !(cause instanceof NotDirectoryException);
+    }
+
+    private static Object storeOf(Path directory) {
+        try {
+            return Files.getFileStore(directory);
+        }
+        catch(IOException ex) {
+            // Without a known store, all such files share one limit, which is the safe choice for a slow device.
+            return "unknown";
+        }
+    }
+
+    private static List<Path> sortByInode(List<Path> files) {
+        final List<Candidate> candidates = new ArrayList<>(files.size());
+        for(Path file : files)  candidates.add(new Candidate(file, inodeOf(file)));
+        candidates.sort(Comparator.comparingLong((Candidate candidate) -> candidate.inode).thenComparing(candidate -> candidate.file));
+
+        final List<Path> sorted = new ArrayList<>(files.size());
+        for(Candidate candidate : candidates)  sorted.add(candidate.file);
+        return sorted;
+    }
+
+    private static long inodeOf(Path file) {
+        if(inodesSupported) {
+            try {
+                return (Long) Files.getAttribute(file, "unix:ino", LinkOption.NOFOLLOW_LINKS);
+            }
+            catch(UnsupportedOperationException | IllegalArgumentException ex) {
+                // The platform has no unix attribute-view, so sort by name from now on.
+                inodesSupported = false;
+            }
+            catch(IOException ex) {
+                // The file is processed last and its task will report why it could not be accessed.
+                return Long.MAX_VALUE;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Candidate {
+        private final Path file;
+        private final long inode;
+
+        Candidate(Path file, long inode) {
+            this.file = file;
+            this.inode = inode;
+        }
+    }
+}
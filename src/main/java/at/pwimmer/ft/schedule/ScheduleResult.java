@@ -0,0 +1,40 @@
+package at.pwimmer.ft.schedule;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The summary of a single {@link IoScheduler#run} call. It counts the processed files and collects the
+ * error-message of each file, whose task has failed.
+ * <p>
+ * All methods are thread-safe, because the counters are updated concurrently by the workers.
+ */
+public class ScheduleResult {
+    private final LongAdder files = new LongAdder();
+    private final Map<Path, String> failures = new ConcurrentHashMap<>();
+
+    void fileProcessed() {
+        files.increment();
+    }
+
+    void failed(Path path, String message) {
+        failures.put(path, message);
+    }
+
+    /**
+     * @return The number of files, whose task has been run, including the failed ones.
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return An unmodifiable map of each failed path and the message why its task failed.
+     */
+    public Map<Path, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+}
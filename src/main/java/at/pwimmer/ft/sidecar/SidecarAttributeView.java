@@ -0,0 +1,120 @@
+package at.pwimmer.ft.sidecar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>Sidecar Attribute View</h1>
+ * <p>
+ *     A {@link UserDefinedFileAttributeView}, which stores the attributes in a hidden sidecar-file of the directory
+ *     instead of the extended attributes of the file. It is used on filesystems without user-defined attributes,
+ *     like FAT- and exFAT-drives or some network-shares, so the tool works the same on every drive.
+ * </p>
+ * <p>
+ *     All files of a directory share one append-only log, which is cached by this JVM. So listing and reading the
+ *     attributes of all files in a directory costs one read of the log instead of one syscall per attribute.
+ *     The view behaves like the one of the JDK, in example reading an attribute into a buffer which is too small
+ *     or deleting a missing attribute fails with an {@link IOException}.
+ * </p>
+ * <p>
+ *     <b>Note</b>: The attributes are bound to the file-name, so renaming or moving a file leaves them behind.
+ * </p>
+ */
+public class SidecarAttributeView implements UserDefinedFileAttributeView {
+    private static final Map<Path, SidecarLog> LOGS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final SidecarLog log;
+    private final String fileName;
+
+    private SidecarAttributeView(Path path, SidecarLog log) {
+        this.path = path;
+        this.log = log;
+        this.fileName = path.getFileName().toString();
+    }
+
+    /**
+     * Returns the view for the file at the passed path, the log of its directory is shared by all views.
+     * @param path The path of the file, which must have a parent directory.
+     * @return The view storing the attributes in the sidecar-file next to the file.
+     */
+    public static SidecarAttributeView of(Path path) {
+        final Path absolute = path == null ? null : path.toAbsolutePath().normalize();
+        if(absolute == null || absolute.getParent() == null || absolute.getFileName() == null)
+            throw new IllegalArgumentException("The passed path is null or has no parent directory!");
+
+        return new SidecarAttributeView(absolute, LOGS.computeIfAbsent(absolute.getParent(), SidecarLog::new));
+    }
+
+    /**
+     * Returns the path of the sidecar-file, which stores the attributes of the passed file, whether it exists or not.
+     * @param path The path of the tagged file, which must have a parent directory.
+     * @return The path of the sidecar-file in the directory of the file.
+     */
+    public static Path sidecarOf(Path path) {
+        final Path absolute = path == null ? null : path.toAbsolutePath().normalize();
+        if(absolute == null || absolute.getParent() == null)
+            throw new IllegalArgumentException("The passed path is null or has no parent directory!");
+
+        return absolute.getParent().resolve(SidecarLog.FILE_NAME);
+    }
+
+    /**
+     * Checks if the passed path is a sidecar-file itself, in example to skip it while scanning a tree.
+     */
+    public static boolean isSidecar(Path path) {
+        return path != null && path.getFileName() != null && path.getFileName().toString().startsWith(SidecarLog.FILE_NAME);
+    }
+
+    @Override
+    public String name() {
+        return "user";
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        return log.list(fileName);
+    }
+
+    @Override
+    public int size(String name) throws IOException {
+        return value(name).length;
+    }
+
+    @Override
+    public int read(String name, ByteBuffer dst) throws IOException {
+        final byte[] value = value(name);
+        if(dst.remaining() < value.length)
+            throw new FileSystemException(path.toString(), null, "The buffer is too small for the attribute '"+name+"'");
+
+        dst.put(value);
+        return value.length;
+    }
+
+    @Override
+    public int write(String name, ByteBuffer src) throws IOException {
+        final byte[] value = new byte[src.remaining()];
+        src.get(value);
+        log.put(fileName, name, value);
+        return value.length;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        if(!log.delete(fileName, name))
+            throw new FileSystemException(path.toString(), null, "The attribute '"+name+"' is not set");
+    }
+
+    private byte[] value(String name) throws IOException {
+        final byte[] value = log.get(fileName, name);
+        if(value == null)
+            throw new FileSystemException(path.toString(), null, "The attribute '"+name+"' is not set");
+        return value;
+    }
+}
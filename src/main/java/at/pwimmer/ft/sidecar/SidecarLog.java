@@ -0,0 +1,285 @@
+package at.pwimmer.ft.sidecar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sidecar-file of one directory, which stores the attributes of all its files as an append-only log.
+ * The log starts with the int <code>FTSC</code> and the int version, followed by one record per change. A record
+ * is the int length of its body and the body: the operation-byte (<code>1</code> put, <code>2</code> delete), the
+ * file-name, the attribute-name and for a put the value, each prefixed with its int length.
+ * <p>
+ * The log is replayed through a memory-map into an in-memory state, so one read serves all attributes of the
+ * directory. A change of another process is noticed by the grown size of the log and only the new records are
+ * replayed. Once most records are outdated, the log is compacted into a new file, which replaces the old one.
+ * <p>
+ * All methods are synchronized. The changes of all logs of one directory within this JVM are serialized by a
+ * shared lock-object, the changes of other processes by a lock on the log-file.
+ */
+final class SidecarLog {
+    static final String FILE_NAME = ".file-tagger.tags";
+    static final int MAGIC = 0x46545343;         // "FTSC"
+    static final int VERSION = 1;
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Object lock;
+    private final Map<String, Map<String, byte[]>> files = new HashMap<>();
+    private Object fileKey;
+    private long replayed;
+    private int records;
+
+    SidecarLog(Path directory) {
+        this.file = directory.resolve(FILE_NAME);
+        this.lock = LOCKS.computeIfAbsent(canonical(directory), key -> new Object());
+    }
+
+    synchronized List<String> list(String fileName) throws IOException {
+        refresh();
+        final Map<String, byte[]> attributes = files.get(fileName);
+        return attributes == null ? List.of() : new ArrayList<>(attributes.keySet());
+    }
+
+    /**
+     * @return The value of the attribute, or <code>null</code> if it is not set.
+     */
+    synchronized byte[] get(String fileName, String attributeName) throws IOException {
+        refresh();
+        final Map<String, byte[]> attributes = files.get(fileName);
+        return attributes == null ? null : attributes.get(attributeName);
+    }
+
+    synchronized void put(String fileName, String attributeName, byte[] value) throws IOException {
+        append(PUT, fileName, attributeName, value);
+    }
+
+    /**
+     * @return Whether the attribute has been set before.
+     */
+    synchronized boolean delete(String fileName, String attributeName) throws IOException {
+        refresh();
+        final Map<String, byte[]> attributes = files.get(fileName);
+        if(attributes == null || !attributes.containsKey(attributeName))  return false;
+
+        append(DELETE, fileName, attributeName, null);
+        return true;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///
+    /// PRIVATE - The private methods for replaying, appending and compacting the log.
+    ///
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void refresh() throws IOException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch(NoSuchFileException ex) {
+            reset(null);
+            return;
+        }
+
+        // A compaction replaces the file, so a new file or a shrunk log has to be replayed from the start.
+        if(!Objects.equals(attrs.fileKey(), fileKey) || attrs.size() < replayed)  reset(attrs.fileKey());
+        if(attrs.size() > replayed) {
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                replay(channel);
+            }
+        }
+    }
+
+    private void reset(Object newFileKey) {
+        files.clear();
+        fileKey = newFileKey;
+        replayed = 0;
+        records = 0;
+    }
+
+    private void replay(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if(size <= replayed)  return;
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if(replayed == 0) {
+            if(size < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+                throw new IOException("The file '"+file+"' is not a valid sidecar-log");
+            if(buffer.getInt(4) != VERSION)
+                throw new IOException("The sidecar-log '"+file+"' has the unsupported version "+buffer.getInt(4));
+            replayed = HEADER_SIZE;
+        }
+
+        buffer.position((int) replayed);
+        while(buffer.remaining() >= Integer.BYTES) {
+            final int length = buffer.getInt(buffer.position());
+            // A record which is not complete yet is still being appended, so it is replayed by the next refresh.
+            if(length < 1 || buffer.remaining() < Integer.BYTES + length)  break;
+
+            buffer.position(buffer.position() + Integer.BYTES);
+            final byte operation = buffer.get();
+            final String fileName = string(buffer);
+            final String attributeName = string(buffer);
+            if(operation == PUT) {
+                final byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                files.computeIfAbsent(fileName, name -> new LinkedHashMap<>()).put(attributeName, value);
+            }
+            else {
+                final Map<String, byte[]> attributes = files.get(fileName);
+                if(attributes != null && attributes.remove(attributeName) != null && attributes.isEmpty())  files.remove(fileName);
+            }
+            replayed = buffer.position();
+            records++;
+        }
+    }
+
+    private void append(byte operation, String fileName, String attributeName, byte[] value) throws IOException {
+        final byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        final byte[] attribute = attributeName.getBytes(StandardCharsets.UTF_8);
+        final int length = 1 + Integer.BYTES + name.length + Integer.BYTES + attribute.length + (value == null ? 0 : Integer.BYTES + value.length);
+
+        final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+        record.putInt(length).put(operation);
+        record.putInt(name.length).put(name);
+        record.putInt(attribute.length).put(attribute);
+        if(value != null)  record.putInt(value.length).put(value);
+        record.flip();
+
+        // File-locks are held per JVM, so the threads of this JVM are serialized before taking the lock of the file.
+        synchronized(lock) {
+            appendLocked(record);
+        }
+    }
+
+    private void appendLocked(ByteBuffer record) throws IOException {
+        final FileChannel channel = openLocked();
+        try(channel) {
+            // Replay the records of other processes first, then the own record is appended behind them.
+            refresh();
+            if(channel.size() == 0) {
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+                reset(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+            }
+
+            long position = channel.size();
+            while(record.hasRemaining())  position += channel.write(record, position);
+            replay(channel);
+
+            if(records >= MIN_COMPACTION_RECORDS && records > 4 * liveAttributes())  compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path temp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                channel.write(header);
+
+                for(Map.Entry<String, Map<String, byte[]>> entry : files.entrySet()) {
+                    // The attributes of removed files would never be read again, so drop them.
+                    if(Files.notExists(file.resolveSibling(entry.getKey()), LinkOption.NOFOLLOW_LINKS))  continue;
+
+                    final byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    for(Map.Entry<String, byte[]> attribute : entry.getValue().entrySet()) {
+                        final byte[] attributeName = attribute.getKey().getBytes(StandardCharsets.UTF_8);
+                        final byte[] value = attribute.getValue();
+                        final int length = 1 + 3 * Integer.BYTES + name.length + attributeName.length + value.length;
+                        final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+                        record.putInt(length).put(PUT).putInt(name.length).put(name)
+                                .putInt(attributeName.length).put(attributeName).putInt(value.length).put(value).flip();
+                        while(record.hasRemaining())  channel.write(record);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        reset(null);
+        refresh();
+    }
+
+    private int liveAttributes() {
+        int live = 0;
+        for(Map<String, byte[]> attributes : files.values())  live += attributes.size();
+        return live;
+    }
+
+    /**
+     * Opens the log and locks it. The lock is released by closing the channel. A compaction of another process
+     * may have replaced the file while waiting for the lock, then the new file is opened and locked instead.
+     */
+    private FileChannel openLocked() throws IOException {
+        while(true) {
+            final Object before = fileKey(file);
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+            }
+            catch(UnsupportedOperationException | IOException ex) {
+                // Some network-shares do not support locks, then only the changes of this process are serialized.
+                return channel;
+            }
+            catch(RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+
+            if(before == null || before.equals(fileKey(file)))  return channel;
+            channel.close();
+        }
+    }
+
+    private static Path canonical(Path directory) {
+        try {
+            return directory.toRealPath();
+        }
+        catch(IOException ex) {
+            return directory.toAbsolutePath().normalize();
+        }
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+        }
+        catch(NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    private static String string(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeCacheTest {
+
+    @Test
+    void testHitsAndInvalidation(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final AttributeCache cache = AttributeCache.enable(16);
+        try {
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+            assertEquals(Map.of("uuid", "1234"), FileTaggerUtils.listAttributes(file));
+            assertEquals("1234", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            assertTrue(FileTaggerUtils.hasAttribute(file, "uuid"));
+            assertEquals(1, cache.getMisses());
+            assertEquals(2, cache.getHits());
+
+            // Writing through the library invalidates the entry.
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "5678");
+            assertEquals("5678", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            assertTrue(FileTaggerUtils.deleteAttribute(file, "uuid"));
+            assertThrows(FileTaggerException.class, () -> FileTaggerUtils.readAttributeFrom(file, "uuid"));
+
+            // A change bypassing the library is noticed by the changed ctime.
+            final UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+            view.write("category", StandardCharsets.UTF_8.encode("action"));
+            assertEquals(Map.of("category", "action"), FileTaggerUtils.listAttributes(file));
+            assertEquals(4, cache.getMisses());
+        }
+        finally {
+            AttributeCache.setCurrent(null);
+        }
+    }
+
+    @Test
+    void testLruEviction(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path first = Files.createFile(dir.resolve("first.mp4"));
+        final Path second = Files.createFile(dir.resolve("second.mp4"));
+        final Path third = Files.createFile(dir.resolve("third.mp4"));
+        final AttributeCache cache = AttributeCache.enable(2);
+        try {
+            FileTaggerUtils.listAttributes(first);
+            FileTaggerUtils.listAttributes(second);
+            FileTaggerUtils.listAttributes(first);
+            FileTaggerUtils.listAttributes(third);
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictions());
+
+            // The second file has been used least recently, so it has been evicted.
+            FileTaggerUtils.listAttributes(first);
+            FileTaggerUtils.listAttributes(second);
+            assertEquals(2, cache.getHits());
+            assertEquals(4, cache.getMisses());
+        }
+        finally {
+            AttributeCache.setCurrent(null);
+        }
+    }
+
+    @Test
+    void testSidecarInvalidation(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final StorageBackend previous = StorageBackend.getCurrent();
+        StorageBackend.setCurrent(StorageBackend.SIDECAR);
+        AttributeCache.enable(16);
+        try {
+            // The sidecar-file does not change the ctime of the file, so only the invalidation keeps the cache correct.
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+            assertEquals("1234", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            FileTaggerUtils.openSession(file).write("uuid", "5678");
+            assertEquals("5678", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+        }
+        finally {
+            AttributeCache.setCurrent(null);
+            StorageBackend.setCurrent(previous);
+        }
+    }
+
+    @Test
+    void testSidecarHardLinks(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final Path link = Files.createLink(dir.resolve("link.mp4"), file);
+        final StorageBackend previous = StorageBackend.getCurrent();
+        StorageBackend.setCurrent(StorageBackend.SIDECAR);
+        AttributeCache.enable(16);
+        try {
+            // The sidecar-tags belong to the file-name, so the hard-links must not share one entry.
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+            assertEquals(Map.of("uuid", "1234"), FileTaggerUtils.listAttributes(file));
+            assertEquals(Map.of(), FileTaggerUtils.listAttributes(link));
+        }
+        finally {
+            AttributeCache.setCurrent(null);
+            StorageBackend.setCurrent(previous);
+        }
+    }
+
+    @Test
+    void testSidecarChangedByOtherProcess(@TempDir Path dir) throws IOException, InterruptedException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final StorageBackend previous = StorageBackend.getCurrent();
+        StorageBackend.setCurrent(StorageBackend.SIDECAR);
+        final AttributeCache cache = AttributeCache.enable(16);
+        try {
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+            assertEquals("1234", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            assertEquals("1234", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            assertEquals(1, cache.getHits());
+
+            // The other process appends to the sidecar-file, which does not change the ctime of the tagged file.
+            final Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), FileTaggerApplication.class.getName(),
+                    "--storage", "SIDECAR", "write", file.toString(), "-an", "uuid", "-av", "5678")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            assertEquals(31, process.waitFor(), "The write-command exits with 31 after adding the tag");
+            assertEquals("5678", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+            assertEquals(1, cache.getHits());
+        }
+        finally {
+            AttributeCache.setCurrent(null);
+            StorageBackend.setCurrent(previous);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package at.pwimmer.ft;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeSessionTest {
+
+    @Test
+    void testBatchOperations(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("session-test.mp4"));
+
+        // Write many attributes within one session and check that the cached names stay in sync.
+        final AttributeSession session = FileTaggerUtils.openSession(file);
+        assertTrue(session.names().isEmpty());
+        session.writeAll(Map.of("uuid", "1234", "category", "action", "actor", "someone"));
+        assertEquals(Set.of("uuid", "category", "actor"), session.names());
+        assertEquals("action", session.read("category"));
+        assertEquals(Map.of("uuid", "1234"), session.readAll(List.of("uuid", "missing")));
+        assertTrue(session.matches("uuid", "1234".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(session.matches("uuid", "123".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(session.matches("missing", "1234".getBytes(StandardCharsets.UTF_8)));
+
+        // A new session has to see the same attributes.
+        final AttributeSession other = FileTaggerUtils.openSession(file);
+        assertEquals(Map.of("uuid", "1234", "category", "action", "actor", "someone"), other.readAll());
+        assertEquals("someone", other.readKnown("actor"));
+
+        // Then delete some of them, deleting a missing attribute is no error.
+        assertEquals(2, other.deleteAll(List.of("actor", "category", "missing")));
+        assertFalse(other.delete("actor"));
+        assertEquals(Set.of("uuid"), other.names());
+        assertEquals(Map.of("uuid", "1234"), FileTaggerUtils.listAttributes(file));
+    }
+
+    @Test
+    void testLargeAndUnicodeValues(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("unicode.mp4"));
+        final String unicode = "Die Br\u00fccke am Fluss \u2013 \uD83C\uDFAC";
+        final String large = "x".repeat(3000);
+
+        FileTaggerUtils.writeAttributeTo(file, "title", unicode);
+        FileTaggerUtils.writeAttributeTo(file, "description", large);
+        assertEquals(unicode, FileTaggerUtils.readAttributeFrom(file, "title"));
+        assertEquals(large, FileTaggerUtils.readAttributeFrom(file, "description"));
+        assertTrue(FileTaggerUtils.openSession(file).matches("title", unicode.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testMissingAttributes(@TempDir Path dir) throws IOException, FileTaggerException {
+        final AttributeSession session = FileTaggerUtils.openSession(Files.createFile(dir.resolve("empty.mp4")));
+        assertThrows(FileTaggerException.class, () -> session.read("uuid"));
+        assertThrows(FileTaggerException.class, () -> session.readKnown("uuid"));
+        assertThrows(FileTaggerException.class, () -> session.deleteKnown("uuid"));
+        assertThrows(IllegalArgumentException.class, () -> session.write("uuid", " "));
+        assertThrows(IllegalArgumentException.class, () -> FileTaggerUtils.openSession(dir.resolve("missing.mp4")));
+    }
+}
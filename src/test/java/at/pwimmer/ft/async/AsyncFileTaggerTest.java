@@ -0,0 +1,229 @@
+package at.pwimmer.ft.async;
+
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class AsyncFileTaggerTest {
+
+    @Test
+    void testSingleOperations(@TempDir Path dir) throws IOException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+
+        try(AsyncFileTagger tagger = new AsyncFileTagger(4)) {
+            assertTrue(tagger.writeAttributeTo(file, "uuid", "1234").join());
+            assertEquals("1234", tagger.readAttributeFrom(file, "uuid").join());
+            assertEquals(Map.of("uuid", "1234"), tagger.listAttributes(file).join());
+            assertTrue(tagger.deleteAttribute(file, "uuid").join());
+
+            // The checked exception is passed on as cause of the failed future.
+            final CompletionException ex = assertThrows(CompletionException.class, () -> tagger.readAttributeFrom(file, "uuid").join());
+            assertInstanceOf(FileTaggerException.class, ex.getCause());
+        }
+    }
+
+    @Test
+    void testBoundedInFlight(@TempDir Path dir) throws IOException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final List<Runnable> started = new ArrayList<>();
+        final AsyncFileTagger tagger = new AsyncFileTagger(started::add, 2);
+
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for(int i = 0; i < 5; i++)  futures.add(tagger.writeAttributeTo(file, "index", String.valueOf(i)));
+
+        // Only two operations have been handed to the executor, the others are queued.
+        assertEquals(2, started.size());
+        assertEquals(3, tagger.getQueuedOperations());
+
+        // Each finished operation starts the next queued one.
+        for(int i = 0; i < started.size(); i++)  started.get(i).run();
+        assertEquals(5, started.size());
+        assertEquals(0, tagger.getQueuedOperations());
+        assertTrue(futures.stream().allMatch(CompletableFuture::join));
+    }
+
+    @Test
+    void testPublishTree(@TempDir Path dir) throws IOException, InterruptedException {
+        final Path nested = Files.createDirectories(dir.resolve("season1"));
+        final Path first = Files.createFile(dir.resolve("movie.mp4"));
+        final Path second = Files.createFile(nested.resolve("episode1.mp4"));
+        Files.createFile(nested.resolve("untagged.mp4"));
+
+        try(AsyncFileTagger tagger = new AsyncFileTagger(4)) {
+            tagger.writeAttributeTo(first, "uuid", "1111").join();
+            tagger.writeAttributeTo(second, "uuid", "2222").join();
+
+            // The subscriber requests one file after the other.
+            final List<TaggedFile> received = new ArrayList<>();
+            final CountDownLatch completed = new CountDownLatch(1);
+            tagger.publishTree(dir).subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(TaggedFile item) {
+                    received.add(item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    fail(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.countDown();
+                }
+            });
+
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertEquals(2, received.size());
+            for(TaggedFile file : received)
+                assertEquals(file.getPath().equals(first) ? "1111" : "2222", file.getAttributes().get("uuid"));
+        }
+    }
+
+    @Test
+    void testCancelledTree(@TempDir Path dir) throws IOException {
+        for(int i = 0; i < 3; i++)  Files.writeString(dir.resolve("movie"+i+".mp4"), "");
+        final List<Runnable> started = new ArrayList<>();
+        final AsyncFileTagger tagger = new AsyncFileTagger(started::add, 2);
+        for(int i = 0; i < 3; i++)  tagger.writeAttributeTo(dir.resolve("movie"+i+".mp4"), "uuid", String.valueOf(i));
+        for(int i = 0; i < started.size(); i++)  started.get(i).run();
+        started.clear();
+
+        final List<Object> signals = new ArrayList<>();
+        final Flow.Subscription[] subscription = new Flow.Subscription[1];
+        tagger.publishTree(dir).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(TaggedFile item) {
+                signals.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        });
+
+        subscription[0].request(1);
+        started.remove(0).run();
+        assertEquals(1, signals.size());
+
+        // Cancelling only schedules a drain, which closes the walk, later requests are ignored.
+        subscription[0].cancel();
+        assertEquals(1, started.size());
+        started.remove(0).run();
+        subscription[0].request(1);
+        for(int i = 0; i < started.size(); i++)  started.get(i).run();
+        assertEquals(1, signals.size());
+    }
+
+    @Test
+    void testUnreadableSubdirectory(@TempDir Path dir) throws IOException {
+        final Path locked = Files.createDirectories(dir.resolve("locked"));
+        final Path movie = Files.createFile(dir.resolve("movie.mp4"));
+        final AsyncFileTagger tagger = new AsyncFileTagger(Runnable::run, 2);
+        tagger.writeAttributeTo(movie, "uuid", "1111").join();
+        tagger.writeAttributeTo(Files.createFile(locked.resolve("episode1.mp4")), "uuid", "2222").join();
+
+        Files.setPosixFilePermissions(locked, Set.of());
+        try {
+            assumeFalse(Files.isReadable(locked), "The permissions are not enforced for this user");
+
+            // The locked directory is skipped, the rest of the tree is still published.
+            final List<Object> signals = new ArrayList<>();
+            tagger.publishTree(dir).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(TaggedFile item) {
+                    signals.add(item.getPath());
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    signals.add(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    signals.add("complete");
+                }
+            });
+            assertEquals(List.of(movie, "complete"), signals);
+        }
+        finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    @Test
+    void testRejectedTree(@TempDir Path dir) {
+        final AsyncFileTagger tagger = new AsyncFileTagger(task -> { throw new RejectedExecutionException("shut down"); }, 2);
+        assertInstanceOf(RejectedExecutionException.class, assertThrows(CompletionException.class, () -> tagger.listAttributes(dir).join()).getCause());
+
+        // A drain which is never started fails the subscriber instead of leaving it waiting.
+        final List<Throwable> errors = new ArrayList<>();
+        tagger.publishTree(dir).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(TaggedFile item) {
+                fail("No file can be published by a rejecting executor");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                errors.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                fail("A rejected walk can not complete");
+            }
+        });
+        assertEquals(1, errors.size());
+        assertInstanceOf(RejectedExecutionException.class, errors.get(0));
+    }
+}
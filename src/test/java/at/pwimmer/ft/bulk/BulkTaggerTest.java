@@ -0,0 +1,119 @@
+package at.pwimmer.ft.bulk;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkTaggerTest {
+
+    @Test
+    void testCsvManifest(@TempDir Path dir) throws IOException, FileTaggerException {
+        final StringBuilder csv = new StringBuilder("path,name,value\n");
+        for(int i = 0; i < 200; i++) {
+            final Path file = Files.createFile(dir.resolve("movie-" + i + ".mp4"));
+            FileTaggerUtils.writeAttributeTo(file, "obsolete", "yes");
+            csv.append('"').append(file).append("\",uuid,uuid-").append(i).append('\n');
+            csv.append(file).append(",title,\"Movie, the \"\"").append(i).append("\"\"\"\n");
+            csv.append(file).append(",obsolete\n");
+        }
+        csv.append(dir.resolve("missing.mp4")).append(",uuid,nope\n");
+
+        final BulkResult result;
+        try(ManifestReader reader = new ManifestReader(new StringReader(csv.toString()), ManifestReader.Format.CSV)) {
+            result = new BulkTagger(4).apply(reader);
+        }
+
+        assertEquals(201, result.getFiles());
+        assertEquals(400, result.getWritten());
+        assertEquals(200, result.getDeleted());
+        assertEquals(1, result.getFailedOperations());
+        assertTrue(result.getFailures().containsKey(dir.resolve("missing.mp4")));
+        assertEquals(Map.of("uuid", "uuid-42", "title", "Movie, the \"42\""), FileTaggerUtils.listAttributes(dir.resolve("movie-42.mp4")));
+    }
+
+    @Test
+    void testNdjsonManifest(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        FileTaggerUtils.writeAttributeTo(file, "watched", "true");
+        final String path = file.toString().replace("\\", "\\\\");
+        final String ndjson = "{\"path\": \"" + path + "\", \"name\": \"actor\", \"value\": \"Bj\\u00f6rk \\\"B\\\"\"}\n"
+                + "\n"
+                + "{\"path\": \"" + path + "\", \"name\": \"watched\", \"value\": null}\n"
+                + "{\"path\": \"" + path + "\", \"name\": \"unset\"}\n";
+
+        final BulkResult result;
+        try(ManifestReader reader = new ManifestReader(new StringReader(ndjson), ManifestReader.Format.NDJSON)) {
+            result = new BulkTagger().apply(reader);
+        }
+
+        assertEquals(1, result.getFiles());
+        assertEquals(1, result.getWritten());
+        assertEquals(1, result.getDeleted());
+        assertEquals(1, result.getMissing());
+        assertEquals(Map.of("actor", "Björk \"B\""), FileTaggerUtils.listAttributes(file));
+    }
+
+    @Test
+    void testNonAdjacentRowsKeepManifestOrder(@TempDir Path dir) throws IOException, FileTaggerException {
+        final int files = 8;
+        final StringBuilder csv = new StringBuilder("path,name,value\n");
+        for(int i = 0; i < files; i++)  Files.createFile(dir.resolve("movie-" + i + ".mp4"));
+
+        // Every file is touched again after all other files, and the even ones are finally untagged.
+        for(int round = 0; round < 30; round++) {
+            for(int i = 0; i < files; i++)  csv.append(dir.resolve("movie-" + i + ".mp4")).append(",counter,").append(round).append('\n');
+        }
+        for(int i = 0; i < files; i += 2)  csv.append(dir.resolve("movie-" + i + ".mp4")).append(",counter\n");
+
+        try(ManifestReader reader = new ManifestReader(new StringReader(csv.toString()), ManifestReader.Format.CSV)) {
+            final BulkResult result = new BulkTagger(4).apply(reader);
+            assertEquals(files / 2, result.getDeleted());
+        }
+
+        for(int i = 0; i < files; i++) {
+            final Path file = dir.resolve("movie-" + i + ".mp4");
+            if(i % 2 == 0)  assertFalse(FileTaggerUtils.hasAttribute(file, "counter"));
+            else  assertEquals("29", FileTaggerUtils.readAttributeFrom(file, "counter"));
+        }
+    }
+
+    @Test
+    void testMalformedManifest(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path a = Files.createFile(dir.resolve("a.mp4"));
+        final ManifestReader csv = new ManifestReader(new StringReader(a+",uuid,1\nonly-one-field\n"+a+",uuid,2\n"), ManifestReader.Format.CSV);
+        final BulkAbortedException ex = assertThrows(BulkAbortedException.class, () -> new BulkTagger().apply(csv));
+        assertTrue(ex.getMessage().contains("line 2"));
+
+        // The operations before the malformed line have been applied and are summarized, the later ones not.
+        assertEquals(2, ex.getLineNumber());
+        assertEquals(1, ex.getResult().getWritten());
+        assertEquals("1", FileTaggerUtils.readAttributeFrom(a, "uuid"));
+
+        final ManifestReader json = new ManifestReader(new StringReader("{\"path\": \"a.mp4\", \"name\": [1]}"), ManifestReader.Format.NDJSON);
+        assertThrows(FileTaggerException.class, json::next);
+        assertEquals(ManifestReader.Format.NDJSON, ManifestReader.Format.of(Path.of("import.ndjson")));
+        assertEquals(ManifestReader.Format.CSV, ManifestReader.Format.of(Path.of("import.csv")));
+    }
+
+    @Test
+    void testOperationList(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path a = Files.createFile(dir.resolve("a.mp4"));
+        final Path b = Files.createFile(dir.resolve("b.mp4"));
+        final BulkResult result = new BulkTagger(2).apply(List.of(
+                new BulkOperation(a, "uuid", "a"), new BulkOperation(a, "category", "drama"), new BulkOperation(b, "uuid", "b")));
+
+        assertEquals(2, result.getFiles());
+        assertEquals(3, result.getWritten());
+        assertEquals("drama", FileTaggerUtils.readAttributeFrom(a, "category"));
+    }
+}
@@ -0,0 +1,66 @@
+package at.pwimmer.ft.commands;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeOutputTest {
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    AttributeOutputTest() {
+        attributes.put("uuid", "1234");
+        attributes.put("description", "line\tone\nline \"two\"");
+    }
+
+    @Test
+    void testTsv() throws IOException {
+        assertEquals("a.mp4\tuuid\t1234\na.mp4\tdescription\tline\\tone\\nline \"two\"\n", write(AttributeOutput.Format.TSV)[0]);
+        assertEquals("b.mp4\tnot set\n", write(AttributeOutput.Format.TSV)[1]);
+    }
+
+    @Test
+    void testNdjson() throws IOException {
+        final String[] written = write(AttributeOutput.Format.NDJSON);
+        assertEquals("{\"path\":\"a.mp4\",\"attributes\":{\"uuid\":\"1234\",\"description\":\"line\\tone\\nline \\\"two\\\"\"}}\n"
+                + "{\"path\":\"c.mp4\",\"attributes\":{}}\n", written[0]);
+        assertEquals("{\"path\":\"b.mp4\",\"error\":\"not set\"}\n", written[1]);
+    }
+
+    @Test
+    void testNullDelimited() throws IOException {
+        final String[] written = write(AttributeOutput.Format.NULL_DELIMITED);
+        assertEquals("a.mp4\0uuid\0001234\0a.mp4\0description\0line\tone\nline \"two\"\0", written[0]);
+        assertEquals("b.mp4\0not set\0", written[1]);
+    }
+
+    @Test
+    void testFormatConverter() {
+        final AttributeOutput.FormatConverter converter = new AttributeOutput.FormatConverter();
+        assertEquals(AttributeOutput.Format.NULL_DELIMITED, converter.convert("null-delimited"));
+        assertEquals(AttributeOutput.Format.TSV, converter.convert("tsv"));
+        assertThrows(RuntimeException.class, () -> converter.convert("xml"));
+    }
+
+    private String[] write(AttributeOutput.Format format) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final AttributeOutput output = new AttributeOutput(format, out, new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        output.file(Path.of("a.mp4"), attributes);
+        output.error(Path.of("b.mp4"), "not set");
+        output.file(Path.of("c.mp4"), Map.of());
+        // Nothing is written before the buffer is flushed.
+        assertEquals(0, out.size());
+
+        output.flush();
+        return new String[] {out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8)};
+    }
+}
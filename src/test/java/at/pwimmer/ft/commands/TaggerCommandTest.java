@@ -0,0 +1,26 @@
+package at.pwimmer.ft.commands;
+
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaggerCommandTest {
+
+    @Test
+    void testLazySubcommands() {
+        // Only the invoked subcommand is registered, the value of an own option is never taken as subcommand.
+        assertEquals(Set.of("read"), TaggerCommand.newCommandLine("read", "-an", "uuid", "movie.mp4").getSubcommands().keySet());
+        assertEquals(Set.of("read"), TaggerCommand.newCommandLine("--stats", "-f", "scan", "read", "movie.mp4").getSubcommands().keySet());
+        assertEquals(Set.of("export"), TaggerCommand.newCommandLine("--socket=/tmp/ft.sock", "export", "movies").getSubcommands().keySet());
+
+        // The usage-help and unknown subcommands need all of them.
+        final CommandLine all = TaggerCommand.newCommandLine("--help");
+        assertEquals(12, all.getSubcommands().size());
+        assertTrue(all.getSubcommands().containsKey("query"));
+        assertEquals(12, TaggerCommand.newCommandLine("unknown").getSubcommands().size());
+        assertEquals(12, TaggerCommand.newCommandLine().getSubcommands().size());
+    }
+}
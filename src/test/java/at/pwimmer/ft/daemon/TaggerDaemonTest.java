@@ -0,0 +1,120 @@
+package at.pwimmer.ft.daemon;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.index.AttributeIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class TaggerDaemonTest {
+
+    @Test
+    void testRequests(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final Path socket = dir.resolve("file-tagger.sock");
+
+        try(TaggerDaemon daemon = TaggerDaemon.bind(socket)) {
+            final Thread server = new Thread(daemon::serve);
+            server.start();
+
+            try(TaggerClient client = TaggerClient.connect(socket)) {
+                client.ping();
+
+                // Write and read some attributes through the daemon and check them locally.
+                assertTrue(client.writeAttributeTo(file, "uuid", "1234"));
+                assertTrue(client.writeAttributeTo(file, "title", "Die Brücke"));
+                assertEquals("1234", client.readAttributeFrom(file, "uuid"));
+                assertEquals(Map.of("uuid", "1234", "title", "Die Brücke"), client.listAttributes(file));
+                assertEquals("Die Brücke", FileTaggerUtils.readAttributeFrom(file, "title"));
+
+                // Then find the file with an index, which gets cached by the daemon.
+                final Path indexFile = dir.resolve("file-tagger.idx");
+                AttributeIndex.build(dir, "uuid", indexFile);
+                assertEquals(List.of(file.toAbsolutePath()), client.find(indexFile, "1234"));
+                assertTrue(client.find(indexFile, "5678").isEmpty());
+
+                // Errors of the daemon are thrown as exceptions, but the connection stays usable.
+                assertThrows(FileTaggerException.class, () -> client.readAttributeFrom(file, "missing"));
+                assertThrows(FileTaggerException.class, () -> client.readAttributeFrom(dir.resolve("missing.mp4"), "uuid"));
+                assertTrue(client.deleteAttribute(file, "title"));
+                assertFalse(client.deleteAttribute(file, "title"));
+            }
+        }
+
+        assertTrue(Files.notExists(socket));
+        assertThrows(FileTaggerException.class, () -> TaggerClient.connect(socket));
+    }
+
+    @Test
+    void testBindKeepsForeignPaths(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path socket = dir.resolve("file-tagger.sock");
+
+        try(TaggerDaemon daemon = TaggerDaemon.bind(socket)) {
+            // A second daemon must not take over the socket of a running one.
+            final FileTaggerException ex = assertThrows(FileTaggerException.class, () -> TaggerDaemon.bind(socket));
+            assertTrue(ex.getMessage().contains("already running"));
+            assertTrue(Files.exists(socket));
+        }
+        assertTrue(Files.notExists(socket));
+
+        // A mistyped path pointing to a regular file is never deleted.
+        final Path file = Files.writeString(dir.resolve("movie.mp4"), "content");
+        assertThrows(FileTaggerException.class, () -> TaggerDaemon.bind(file));
+        assertEquals("content", Files.readString(file));
+    }
+
+    @Test
+    void testBindReplacesStaleSocket(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path socket = dir.resolve("file-tagger.sock");
+
+        // Leave a socket-file behind without anybody listening on it, like a killed daemon does.
+        try(ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            stale.bind(UnixDomainSocketAddress.of(socket));
+        }
+        assertTrue(Files.exists(socket));
+
+        try(TaggerDaemon daemon = TaggerDaemon.bind(socket)) {
+            final Thread server = new Thread(daemon::serve);
+            server.start();
+            try(TaggerClient client = TaggerClient.connect(socket)) {
+                client.ping();
+            }
+        }
+    }
+
+    @Test
+    void testBindKeepsUnreachableSocket(@TempDir Path dir) throws IOException {
+        final Path socket = dir.resolve("file-tagger.sock");
+
+        try(ServerSocketChannel live = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            live.bind(UnixDomainSocketAddress.of(socket));
+
+            // Connecting needs the write-permission of the socket-file, so this daemon is alive, but not reachable.
+            Files.setPosixFilePermissions(socket, Set.of());
+            try {
+                assumeFalse(Files.isWritable(socket), "The permissions are not enforced for this user");
+
+                final FileTaggerException ex = assertThrows(FileTaggerException.class, () -> TaggerDaemon.bind(socket));
+                assertTrue(ex.getMessage().contains("Could not check"));
+                assertTrue(Files.exists(socket));
+            }
+            finally {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rwx------"));
+            }
+        }
+    }
+}
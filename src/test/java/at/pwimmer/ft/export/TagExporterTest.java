@@ -0,0 +1,172 @@
+package at.pwimmer.ft.export;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.packed.PackedAttribute;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class TagExporterTest {
+
+    @Test
+    void testIncrementalExport(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path root = Files.createDirectories(dir.resolve("movies"));
+        final Path checkpoint = dir.resolve("export.ckpt");
+        final Path first = Files.createFile(root.resolve("first.mp4"));
+        final Path second = Files.createFile(root.resolve("second.mp4"));
+        Files.createFile(root.resolve("untagged.mp4"));
+        FileTaggerUtils.writeAttributeTo(first, "uuid", "1234");
+        FileTaggerUtils.writeAttributeTo(second, "title", "Say \"hi\"");
+
+        // The first run exports all tagged files, the untagged one is skipped.
+        List<String> lines = export(root, checkpoint);
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"path\":\""+first.toAbsolutePath()+"\"") && line.endsWith("\"attributes\":{\"uuid\":\"1234\"}}")));
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith("\"attributes\":{\"title\":\"Say \\\"hi\\\"\"}}")));
+        assertTrue(lines.get(0).contains("\"fileKey\":"));
+
+        // Nothing has changed, so nothing is read or exported.
+        assertTrue(export(root, checkpoint).isEmpty());
+
+        // Clearing the tags of a file exports it without attributes, a removed file is exported as removal.
+        FileTaggerUtils.deleteAttribute(first, "uuid");
+        Files.delete(second);
+        lines = export(root, checkpoint);
+        assertEquals(2, lines.size());
+        assertTrue(lines.contains("{\"path\":\""+second.toAbsolutePath()+"\",\"removed\":true}"));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"path\":\""+first.toAbsolutePath()+"\"") && line.endsWith("\"attributes\":{}}")));
+
+        // A full export without checkpoint does not contain any of the untagged files.
+        assertTrue(export(root, null).isEmpty());
+    }
+
+    @Test
+    void testUnreadableDirectory(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path root = Files.createDirectories(dir.resolve("movies"));
+        final Path locked = Files.createDirectories(root.resolve("locked"));
+        final Path checkpoint = dir.resolve("export.ckpt");
+        FileTaggerUtils.writeAttributeTo(Files.createFile(locked.resolve("hidden.mp4")), "uuid", "1234");
+        assertEquals(1, export(root, checkpoint).size());
+
+        // A directory which can not be listed anymore does not remove its files from the export.
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        try {
+            assumeFalse(Files.isReadable(locked), "The permissions are not enforced for this user");
+            assertTrue(export(root, checkpoint).isEmpty());
+        }
+        finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+
+        // As soon as it can be listed again, nothing has changed, a removed file is exported as removal.
+        assertTrue(export(root, checkpoint).isEmpty());
+        Files.delete(locked.resolve("hidden.mp4"));
+        assertEquals(List.of("{\"path\":\""+locked.resolve("hidden.mp4").toAbsolutePath()+"\",\"removed\":true}"), export(root, checkpoint));
+    }
+
+    @Test
+    void testBinaryExport(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("binary.mp4"));
+        FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ExportWriter writer = ExportWriter.of(ExportWriter.Format.BINARY, bytes)) {
+            final ExportResult result = new TagExporter(dir).export(writer);
+            assertEquals(1, result.getExported());
+            assertEquals(1, result.getFiles());
+        }
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(ExportWriter.MAGIC, in.readInt());
+        assertEquals(ExportWriter.VERSION, in.readInt());
+        assertEquals(ExportWriter.FILE, in.readByte());
+        assertEquals(file.toAbsolutePath().toString(), string(in));
+        assertFalse(string(in).isEmpty());
+        in.readLong();
+        assertEquals(1, in.readInt());
+        assertEquals("uuid", string(in));
+        assertEquals("1234", string(in));
+        assertEquals(ExportWriter.END, in.readByte());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void testPackedExport(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("packed.mp4"));
+        final PackedAttribute meta = PackedAttribute.builder()
+                .put("title", "Die Brücke")
+                .put("actors", List.of("Tom Hanks", "Meg Ryan"))
+                .put("year", 1998)
+                .build();
+        FileTaggerUtils.writePackedAttributeTo(file, "meta", meta);
+
+        // The fields of a packed value are exported as nested object instead of its raw bytes.
+        final List<String> lines = export(dir, null);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\"attributes\":{\"meta\":{\"title\":\"Die Brücke\",\"actors\":[\"Tom Hanks\",\"Meg Ryan\"],\"year\":1998}}}"));
+
+        // The binary format keeps the raw bytes, so the packed value can be decoded again.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ExportWriter writer = ExportWriter.of(ExportWriter.Format.BINARY, bytes)) {
+            new TagExporter(dir).export(writer);
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.skipBytes(9);
+        string(in);
+        string(in);
+        in.readLong();
+        assertEquals(1, in.readInt());
+        assertEquals("meta", string(in));
+        final byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        assertEquals(meta, PackedAttribute.decode(value));
+    }
+
+    @Test
+    void testCheckpointAfterClose(@TempDir Path dir) throws IOException, FileTaggerException {
+        FileTaggerUtils.writeAttributeTo(Files.createFile(dir.resolve("movie.mp4")), "uuid", "1234");
+        final Path checkpoint = dir.resolve("export.checkpoint");
+
+        // The records only reach the target on close, so a failing close must not save the checkpoint.
+        final OutputStream failing = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("The disk is full");
+            }
+        };
+        assertThrows(FileTaggerException.class, () -> new TagExporter(dir, checkpoint).export(ExportWriter.of(ExportWriter.Format.BINARY, failing)));
+        assertTrue(Files.notExists(checkpoint));
+        assertEquals(1, export(dir, checkpoint).size());
+    }
+
+    private static List<String> export(Path root, Path checkpoint) throws IOException, FileTaggerException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ExportWriter writer = ExportWriter.of(ExportWriter.Format.NDJSON, bytes)) {
+            new TagExporter(root, checkpoint).export(writer);
+        }
+        final String text = bytes.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? List.of() : Arrays.stream(text.split("\n")).collect(Collectors.toList());
+    }
+
+    private static String string(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package at.pwimmer.ft.fingerprint;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FingerprinterTest {
+
+    @Test
+    void testFingerprint(@TempDir Path dir) throws IOException {
+        final byte[] content = new byte[Fingerprint.SAMPLES * Fingerprint.BLOCK_SIZE * 4];
+        new Random(42).nextBytes(content);
+        final Path large = Files.write(dir.resolve("large.mp4"), content);
+        final Path copy = Files.copy(large, dir.resolve("copy.mp4"));
+
+        final String fingerprint = Fingerprint.of(large);
+        assertEquals(fingerprint, Fingerprint.of(copy));
+        assertEquals(content.length, Fingerprint.sizeOf(fingerprint));
+        assertTrue(fingerprint.startsWith("1:" + content.length + ":"));
+
+        // A change within the first block changes the fingerprint, a change between the samples does not.
+        content[0]++;
+        assertNotEquals(fingerprint, Fingerprint.of(Files.write(copy, content)));
+        content[0]--;
+        content[Fingerprint.BLOCK_SIZE + 1]++;
+        assertEquals(fingerprint, Fingerprint.of(Files.write(copy, content)));
+
+        // Small files are hashed completely.
+        assertNotEquals(Fingerprint.of(Files.writeString(dir.resolve("a.txt"), "abc")), Fingerprint.of(Files.writeString(dir.resolve("b.txt"), "abd")));
+        assertEquals(-1, Fingerprint.sizeOf("2:1:00"));
+        assertEquals(-1, Fingerprint.sizeOf(null));
+    }
+
+    @Test
+    void testReattachLostUuids(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path library = Files.createDirectories(dir.resolve("library"));
+        final Path catalog = dir.resolve("catalog.tsv");
+        final Path movie = Files.write(library.resolve("movie.mp4"), randomBytes(1, 300_000));
+        final Path other = Files.write(library.resolve("other.mp4"), randomBytes(2, 300_000));
+        FileTaggerUtils.writeAttributeTo(movie, "uuid", "1111");
+        FileTaggerUtils.writeAttributeTo(other, "uuid", "2222");
+
+        FingerprintResult result = new Fingerprinter("uuid", catalog).run(library);
+        assertEquals(2, result.getFingerprinted());
+        assertEquals(0, result.getReattached());
+        assertEquals(Fingerprint.of(movie), FileTaggerUtils.readAttributeFrom(movie, Fingerprinter.FINGERPRINT_ATTRIBUTE));
+        assertTrue(Files.readString(catalog).contains(Fingerprint.of(other) + "\t2222"));
+
+        // Copying the movie drops its attributes, the next run re-attaches the UUID by the fingerprint.
+        final Path copied = Files.copy(movie, library.resolve("copied.mp4"));
+        FileTaggerUtils.deleteAttribute(movie, "uuid");
+        FileTaggerUtils.deleteAttribute(movie, Fingerprinter.FINGERPRINT_ATTRIBUTE);
+        Files.write(library.resolve("unknown.mp4"), randomBytes(3, 300_000));
+
+        result = new Fingerprinter("uuid", catalog, 2).run(library);
+        assertEquals(0, result.getFingerprinted());
+        assertEquals(2, result.getReattached());
+        assertEquals(4, result.getFiles());
+        assertTrue(result.getFailures().isEmpty());
+        assertEquals("1111", FileTaggerUtils.readAttributeFrom(movie, "uuid"));
+        assertEquals("1111", FileTaggerUtils.readAttributeFrom(copied, "uuid"));
+        assertFalse(FileTaggerUtils.hasAttribute(library.resolve("unknown.mp4"), "uuid"));
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        final byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeIndexTest {
+
+    @Test
+    void testBuildAndFind(@TempDir Path root) throws IOException, FileTaggerException {
+        // Create some tagged files in nested directories and one untagged file.
+        final Path nested = Files.createDirectories(root.resolve("action").resolve("2022"));
+        final UUID[] uuids = new UUID[50];
+        for(int i = 0; i < uuids.length; i++) {
+            final Path file = Files.createFile((i % 2 == 0 ? root : nested).resolve("movie-" + i + ".mp4"));
+            uuids[i] = UUID.randomUUID();
+            FileTaggerUtils.writeAttributeTo(file, "uuid", uuids[i].toString());
+        }
+        Files.createFile(root.resolve("untagged.mp4"));
+
+        final Path indexFile = root.resolve("file-tagger.idx");
+        assertEquals(uuids.length, AttributeIndex.build(root, "uuid", indexFile));
+
+        try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+            assertEquals("uuid", index.getAttributeName());
+            assertEquals(uuids.length, index.size());
+
+            // Every UUID has to resolve to exactly its own file.
+            for(int i = 0; i < uuids.length; i++) {
+                final List<Path> paths = index.find(uuids[i].toString());
+                assertEquals(1, paths.size());
+                assertEquals("movie-" + i + ".mp4", paths.get(0).getFileName().toString());
+            }
+
+            assertTrue(index.find(UUID.randomUUID().toString()).isEmpty());
+        }
+    }
+
+    @Test
+    void testDuplicateValues(@TempDir Path root) throws IOException, FileTaggerException {
+        FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("a.mp4")), "category", "action");
+        FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("b.mp4")), "category", "action");
+        FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("c.mp4")), "category", "drama");
+
+        final Path indexFile = root.resolve("category.idx");
+        AttributeIndex.build(root, "category", indexFile);
+
+        try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+            assertEquals(2, index.find("action").size());
+            assertEquals(1, index.find("drama").size());
+        }
+    }
+
+    @Test
+    void testInvalidIndex(@TempDir Path root) throws IOException {
+        final Path invalid = Files.writeString(root.resolve("invalid.idx"), "this is not an index at all");
+        assertThrows(FileTaggerException.class, () -> AttributeIndex.open(invalid));
+        assertThrows(IllegalArgumentException.class, () -> AttributeIndex.open(root.resolve("missing.idx")));
+        assertThrows(IllegalArgumentException.class, () -> AttributeIndex.build(root, " ", invalid));
+    }
+}
@@ -0,0 +1,100 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexWatcherTest {
+
+    @Test
+    void testCatchUp(@TempDir Path root) throws IOException, FileTaggerException {
+        final Path indexFile = root.resolve("file-tagger.idx");
+        for(int i = 0; i < 20; i++)
+            FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("movie-" + i + ".mp4")), "uuid", "uuid-" + i);
+        Files.createFile(root.resolve("untagged.mp4"));
+        assertEquals(20, AttributeIndex.build(root, "uuid", indexFile));
+
+        // Without any change, the catch-up does not read a single file again.
+        assertEquals(0, new IndexWatcher(root, "uuid", indexFile).catchUp());
+
+        // Re-tag one file, tag the untagged one, remove another and add a new one.
+        FileTaggerUtils.writeAttributeTo(root.resolve("movie-1.mp4"), "uuid", "retagged");
+        FileTaggerUtils.writeAttributeTo(root.resolve("untagged.mp4"), "uuid", "now-tagged");
+        Files.delete(root.resolve("movie-2.mp4"));
+        FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("new.mp4")), "uuid", "new");
+
+        final IndexWatcher watcher = new IndexWatcher(root, "uuid", indexFile);
+        assertEquals(3, watcher.catchUp());
+        assertEquals(21, watcher.getKnownFiles());
+
+        try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+            assertEquals(21, index.size());
+            assertTrue(index.find("uuid-1").isEmpty());
+            assertTrue(index.find("uuid-2").isEmpty());
+            assertEquals(List.of(root.resolve("movie-1.mp4")), index.find("retagged"));
+            assertEquals(List.of(root.resolve("untagged.mp4")), index.find("now-tagged"));
+            assertEquals(List.of(root.resolve("new.mp4")), index.find("new"));
+        }
+    }
+
+    @Test
+    void testWatch(@TempDir Path root) throws Exception, FileTaggerException {
+        final Path indexFile = root.resolve("file-tagger.idx");
+        final Path movies = Files.createDirectories(root.resolve("movies"));
+        FileTaggerUtils.writeAttributeTo(Files.createFile(movies.resolve("a.mp4")), "uuid", "a");
+
+        // An assertion failing in the watching thread would not fail the test, so hand its error over.
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = null;
+        try(IndexWatcher watcher = new IndexWatcher(root, "uuid", indexFile, 50)) {
+            assertEquals(1, watcher.catchUp());
+            thread = new Thread(() -> {
+                try {
+                    watcher.watch();
+                }
+                catch(FileTaggerException | RuntimeException ex) {
+                    failure.set(ex);
+                }
+            });
+            thread.start();
+            Thread.sleep(200);
+
+            // Tag a new file in a new directory, re-tag an existing one and wait for the index to catch up.
+            final Path season = Files.createDirectories(movies.resolve("season-1"));
+            FileTaggerUtils.writeAttributeTo(Files.createFile(season.resolve("episode-1.mp4")), "uuid", "e1");
+            FileTaggerUtils.writeAttributeTo(movies.resolve("a.mp4"), "uuid", "a2");
+            awaitIndex(indexFile, "e1", season.resolve("episode-1.mp4"));
+            awaitIndex(indexFile, "a2", movies.resolve("a.mp4"));
+
+            // Deleting the whole directory removes its files from the index.
+            Files.delete(season.resolve("episode-1.mp4"));
+            Files.delete(season);
+            awaitIndex(indexFile, "e1", null);
+        }
+        finally {
+            // Closing the watcher stops watching, so the thread ends and its error is rethrown on this thread.
+            if(thread != null)  thread.join(10_000);
+            if(failure.get() != null)  fail("The watcher failed", failure.get());
+        }
+    }
+
+    private static void awaitIndex(Path indexFile, String value, Path expected) throws Exception, FileTaggerException {
+        final List<Path> paths = expected == null ? List.of() : List.of(expected);
+        for(int i = 0; i < 100; i++) {
+            try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+                if(index.find(value).equals(paths))  return;
+            }
+            Thread.sleep(50);
+        }
+        fail("The index did not contain '" + value + "' -> " + paths + " in time");
+    }
+}
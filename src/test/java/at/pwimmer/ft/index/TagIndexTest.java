@@ -0,0 +1,88 @@
+package at.pwimmer.ft.index;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagIndexTest {
+
+    @Test
+    void testQueries(@TempDir Path root) throws IOException, FileTaggerException {
+        tag(root, "heat.mp4", "category", "action", "actor", "Al Pacino", "watched", "true");
+        tag(root, "godfather.mp4", "category", "drama", "actor", "Al Pacino");
+        tag(root, "big.mp4", "category", "comedy", "actor", "Tom Hanks");
+        tag(root, "top-gun.mp4", "category", "action", "actor", "Tom Cruise");
+        tag(root, "collateral.mp4", "category", "action", "actor", "Tom Cruise", "watched", "false");
+        tag(root, "untagged.mp4");
+
+        // The index is built into the scanned root, but never indexes itself.
+        final Path indexFile = root.resolve("file-tagger.tagidx");
+        TagIndex.build(root, indexFile);
+        TagIndex.build(root, indexFile);
+        final TagIndex index = TagIndex.open(indexFile);
+        assertEquals(6, index.size());
+
+        assertEquals(Set.of("heat.mp4", "top-gun.mp4", "collateral.mp4"), names(index.query("category=action")));
+        assertEquals(Set.of("top-gun.mp4", "collateral.mp4"), names(index.query("category=action AND actor=\"Tom Cruise\" AND NOT watched=true")));
+        assertEquals(Set.of("big.mp4", "top-gun.mp4", "collateral.mp4"), names(index.query("actor=Tom*")));
+        assertEquals(Set.of("heat.mp4", "collateral.mp4"), names(index.query("watched=*")));
+        assertEquals(Set.of("godfather.mp4", "big.mp4"), names(index.query("(category=drama or category=comedy) and not watched=*")));
+        assertEquals(Set.of("heat.mp4", "big.mp4"), names(index.query("category=action actor=Al* OR actor=\"Tom Hanks\"")));
+        assertEquals(0, index.count("category=horror"));
+        assertEquals(Set.of("godfather.mp4", "big.mp4", "untagged.mp4"), names(index.query("NOT category=action")));
+        assertEquals(Set.of("big.mp4", "top-gun.mp4", "collateral.mp4", "untagged.mp4"), names(index.query("NOT watched=true AND NOT actor=\"Al Pacino\"")));
+
+        assertThrows(FileTaggerException.class, () -> index.query("category=action AND"));
+        assertThrows(FileTaggerException.class, () -> index.query("(category=action"));
+        assertThrows(FileTaggerException.class, () -> index.query("category"));
+    }
+
+    @Test
+    void testBitmapOperations() {
+        // Mix sparse and dense chunks, so both container-types and their conversions are used.
+        final Bitmap even = new Bitmap();
+        final Bitmap dense = new Bitmap();
+        final Bitmap sparse = new Bitmap();
+        for(int i = 0; i < 200_000; i++) {
+            if(i % 2 == 0)  even.add(i);
+            if(i < 70_000)  dense.add(i);
+            if(i % 1000 == 7)  sparse.add(i);
+        }
+
+        assertEquals(100_000, even.cardinality());
+        assertEquals(35_000, even.and(dense).cardinality());
+        assertEquals(135_000, even.or(dense).cardinality());
+        assertEquals(65_000, even.andNot(dense).cardinality());
+        assertEquals(0, even.and(sparse).cardinality());
+        assertEquals(70, dense.and(sparse).cardinality());
+        assertEquals(200_000 - 100_000 - 200, Bitmap.range(200_000).andNot(even).andNot(sparse).cardinality());
+        assertTrue(dense.andNot(Bitmap.range(70_000)).isEmpty());
+
+        // Values added out of order have to be sorted in.
+        final Bitmap unordered = new Bitmap();
+        for(int value : new int[] {70_000, 5, 1, 65_536, 5})  unordered.add(value);
+        assertEquals(4, unordered.cardinality());
+        assertTrue(unordered.contains(65_536));
+        assertFalse(unordered.contains(2));
+    }
+
+    private static void tag(Path root, String name, String... attributes) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(root.resolve(name));
+        for(int i = 0; i < attributes.length; i += 2)
+            FileTaggerUtils.writeAttributeTo(file, attributes[i], attributes[i + 1]);
+    }
+
+    private static Set<String> names(List<Path> paths) {
+        return paths.stream().map(path -> path.getFileName().toString()).collect(Collectors.toSet());
+    }
+}
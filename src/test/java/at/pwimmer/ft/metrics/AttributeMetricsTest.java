@@ -0,0 +1,60 @@
+package at.pwimmer.ft.metrics;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.metrics.AttributeMetrics.Operation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeMetricsTest {
+
+    @Test
+    void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+
+        // 90 fast calls of about 1us and 10 slow calls of about 5ms.
+        for(int i = 0; i < 90; i++)  histogram.record(1_000);
+        for(int i = 0; i < 10; i++)  histogram.record(5_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5_000_000, histogram.getMaxNanos());
+        assertEquals((90 * 1_000L + 10 * 5_000_000L) / 100, histogram.getMeanNanos());
+        assertTrue(histogram.getPercentileNanos(50) >= 1_000 && histogram.getPercentileNanos(50) < 2_048);
+        assertTrue(histogram.getPercentileNanos(90) < 2_048);
+        assertEquals(5_000_000, histogram.getPercentileNanos(99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    void testRecordedOperations(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("metrics.mp4"));
+        final long writes = AttributeMetrics.getCalls(Operation.WRITE);
+        final long written = AttributeMetrics.getBytes(Operation.WRITE);
+        final long reads = AttributeMetrics.getCalls(Operation.READ);
+        final long deletes = AttributeMetrics.getCalls(Operation.DELETE);
+        final long failures = AttributeMetrics.getFailures(Operation.READ);
+
+        FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+        assertEquals("1234", FileTaggerUtils.readAttributeFrom(file, "uuid"));
+        assertTrue(FileTaggerUtils.deleteAttribute(file, "uuid"));
+        assertThrows(FileTaggerException.class, () -> FileTaggerUtils.openSession(file).readKnown("uuid"));
+
+        assertEquals(writes + 1, AttributeMetrics.getCalls(Operation.WRITE));
+        assertEquals(written + 4, AttributeMetrics.getBytes(Operation.WRITE));
+        assertEquals(reads + 2, AttributeMetrics.getCalls(Operation.READ));
+        assertEquals(deletes + 1, AttributeMetrics.getCalls(Operation.DELETE));
+        assertEquals(failures + 1, AttributeMetrics.getFailures(Operation.READ));
+        assertTrue(AttributeMetrics.getCalls(Operation.LIST) > 0);
+        assertTrue(AttributeMetrics.summary().contains("write"));
+    }
+}
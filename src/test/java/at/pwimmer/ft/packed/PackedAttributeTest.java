@@ -0,0 +1,127 @@
+package at.pwimmer.ft.packed;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedAttributeTest {
+
+    @Test
+    void testEncoding() {
+        final PackedAttribute attribute = PackedAttribute.builder()
+                .put("title", "Die Brücke")
+                .put("actors", List.of("Tom Hanks", "Meg Ryan"))
+                .put("year", 1998)
+                .put("offset", -42)
+                .put("empty", List.of())
+                .build();
+
+        assertEquals(Set.of("title", "actors", "year", "offset", "empty"), attribute.names());
+        assertEquals("Die Brücke", attribute.getString("title"));
+        assertEquals(List.of("Tom Hanks", "Meg Ryan"), attribute.getList("actors"));
+        assertEquals(List.of("Die Brücke"), attribute.getList("title"));
+        assertEquals(1998L, attribute.getLong("year"));
+        assertEquals(-42L, attribute.getLong("offset"));
+        assertEquals(List.of(), attribute.getList("empty"));
+        assertNull(attribute.getString("missing"));
+        assertFalse(attribute.has("missing"));
+        assertThrows(IllegalArgumentException.class, () -> attribute.getString("actors"));
+        assertThrows(IllegalArgumentException.class, () -> attribute.getLong("title"));
+        assertEquals("{title=Die Brücke, actors=[Tom Hanks, Meg Ryan], year=1998, offset=-42, empty=[]}", attribute.toString());
+
+        // The bytes are decoded again to the same fields, changing one field keeps all others.
+        final PackedAttribute decoded = PackedAttribute.decode(attribute.toBytes());
+        assertEquals(attribute, decoded);
+        final PackedAttribute changed = decoded.toBuilder().put("year", 1999).remove("empty").build();
+        assertEquals(1999L, changed.getLong("year"));
+        assertEquals(List.of("Tom Hanks", "Meg Ryan"), changed.getList("actors"));
+        assertFalse(changed.has("empty"));
+
+        assertThrows(IllegalArgumentException.class, () -> PackedAttribute.decode("plain".getBytes()));
+        assertThrows(IllegalArgumentException.class, () -> PackedAttribute.decode(new byte[] {(byte) 0xFF, 9, 0}));
+        assertThrows(IllegalArgumentException.class, () -> PackedAttribute.decode(Arrays.copyOf(attribute.toBytes(), 8)).getString("year"));
+    }
+
+    @Test
+    void testReadAndWrite(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path file = Files.createFile(dir.resolve("packed.mp4"));
+        final PackedAttribute attribute = PackedAttribute.builder()
+                .put("actors", List.of("Tom Hanks", "Meg Ryan"))
+                .put("categories", List.of("comedy", "romance"))
+                .put("year", 1998)
+                .build();
+
+        assertTrue(FileTaggerUtils.writePackedAttributeTo(file, "meta", attribute));
+        FileTaggerUtils.writeAttributeTo(file, "uuid", "1234");
+
+        final PackedAttribute read = FileTaggerUtils.readPackedAttributeFrom(file, "meta");
+        assertEquals(attribute, read);
+        assertEquals(List.of("comedy", "romance"), read.getList("categories"));
+
+        // Listing all attributes returns the raw text of the packed one, a plain value can not be read as packed.
+        assertEquals(Map.of("uuid", "1234", "meta", new String(attribute.toBytes(), StandardCharsets.UTF_8)), FileTaggerUtils.listAttributes(file));
+        assertThrows(FileTaggerException.class, () -> FileTaggerUtils.readPackedAttributeFrom(file, "uuid"));
+        assertThrows(FileTaggerException.class, () -> FileTaggerUtils.readPackedAttributeFrom(file, "missing"));
+    }
+
+    @Test
+    void testMalformedValues(@TempDir Path dir) throws IOException, FileTaggerException {
+        final byte[] valid = PackedAttribute.builder()
+                .put("title", "Die Brücke")
+                .put("actors", List.of("Tom Hanks", "Meg Ryan"))
+                .put("year", 1998)
+                .build().toBytes();
+
+        // Every truncated or mutated value is either rejected with an IllegalArgumentException or fully readable.
+        final Random random = new Random(42);
+        for(int length = 2; length < valid.length; length++) {
+            assertThrows(IllegalArgumentException.class, decoding(Arrays.copyOf(valid, length)));
+        }
+        for(int i = 0; i < 10_000; i++) {
+            final byte[] mutated = Arrays.copyOf(valid, 3 + random.nextInt(valid.length - 2));
+            mutated[2 + random.nextInt(mutated.length - 2)] = (byte) random.nextInt(256);
+            try {
+                decoding(mutated).execute();
+            }
+            catch(IllegalArgumentException ex) {
+                // Rejected as expected.
+            }
+            catch(Throwable ex) {
+                fail("Decoding "+Arrays.toString(mutated)+" failed with "+ex);
+            }
+        }
+
+        // A plain value which only starts like a packed one is listed as plain string.
+        final Path file = Files.createFile(dir.resolve("plain.mp4"));
+        final byte[] plain = {(byte) 0xFF, 1, 5, 'a'};
+        Files.getFileAttributeView(file, UserDefinedFileAttributeView.class).write("meta", ByteBuffer.wrap(plain));
+        assertEquals(1, FileTaggerUtils.listAttributes(file).size());
+        assertThrows(FileTaggerException.class, () -> FileTaggerUtils.readPackedAttributeFrom(file, "meta"));
+    }
+
+    private static Executable decoding(byte[] value) {
+        return () -> {
+            final PackedAttribute attribute = PackedAttribute.decode(value);
+            attribute.toString();
+            for(String name : attribute.names()) {
+                attribute.getList(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package at.pwimmer.ft.scan;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.schedule.IoScheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeScannerTest {
+
+    @Test
+    void testScanTree(@TempDir Path root) throws IOException, FileTaggerException {
+        // Create a flat directory with more files than one batch and a nested one with a trailer.
+        final Path action = Files.createDirectories(root.resolve("action"));
+        final Path trailers = Files.createDirectories(root.resolve("trailers"));
+        for(int i = 0; i < 100; i++) {
+            final Path file = Files.createFile(action.resolve("movie-" + i + ".mp4"));
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "uuid-" + i);
+            FileTaggerUtils.writeAttributeTo(file, "category", "action");
+        }
+        FileTaggerUtils.writeAttributeTo(Files.createFile(trailers.resolve("trailer.mp4")), "uuid", "trailer");
+        FileTaggerUtils.writeAttributeTo(Files.createFile(action.resolve("notes.txt")), "uuid", "notes");
+        Files.createFile(action.resolve("untagged.mp4"));
+
+        final Map<Path, Map<String, String>> found = new ConcurrentHashMap<>();
+        final ScanResult all = new TreeScanner().scan(root, found::put);
+        assertEquals(103, all.getFiles());
+        assertEquals(102, all.getTaggedFiles());
+        assertTrue(all.getFailures().isEmpty());
+        assertEquals("action", found.get(action.resolve("movie-42.mp4")).get("category"));
+
+        // Then only scan the movies of the flat directory and restrict the reported attributes.
+        found.clear();
+        final TreeScanner filtered = new TreeScanner(3, "uuid", List.of("**.mp4"), List.of("trailers"));
+        final ScanResult movies = filtered.scan(root, found::put);
+        assertEquals(101, movies.getFiles());
+        assertEquals(100, movies.getTaggedFiles());
+        assertEquals(Map.of("uuid", "uuid-7"), found.get(action.resolve("movie-7.mp4")));
+        assertFalse(found.containsKey(trailers.resolve("trailer.mp4")));
+    }
+
+    @Test
+    void testAdaptiveScan(@TempDir Path root) throws IOException, FileTaggerException {
+        for(int d = 0; d < 3; d++) {
+            final Path season = Files.createDirectories(root.resolve("season-" + d));
+            for(int i = 0; i < 20; i++)
+                FileTaggerUtils.writeAttributeTo(Files.createFile(season.resolve("episode-" + i + ".mp4")), "uuid", d + "-" + i);
+        }
+        Files.createFile(root.resolve("untagged.mp4"));
+
+        // The scheduler reads the same files as the parallel walk, only in another order.
+        final Map<Path, Map<String, String>> found = new ConcurrentHashMap<>();
+        final ScanResult result = new TreeScanner(new IoScheduler(4), null, List.of(), List.of()).scan(root, found::put);
+        assertEquals(61, result.getFiles());
+        assertEquals(60, result.getTaggedFiles());
+        assertEquals(Map.of("uuid", "2-7"), found.get(root.resolve("season-2").resolve("episode-7.mp4")));
+
+        // Without a current scheduler, the workers listing the tree read the files right away.
+        final IoScheduler current = IoScheduler.getCurrent();
+        assertNotNull(current);
+        IoScheduler.setCurrent(null);
+        try {
+            found.clear();
+            final ScanResult fixed = new TreeScanner(2, null, List.of(), List.of()).scan(root, found::put);
+            assertEquals(61, fixed.getFiles());
+            assertEquals(60, found.size());
+        }
+        finally {
+            IoScheduler.setCurrent(current);
+        }
+    }
+
+    @Test
+    void testFindByValue(@TempDir Path root) throws IOException, FileTaggerException {
+        for(int i = 0; i < 40; i++)
+            FileTaggerUtils.writeAttributeTo(Files.createFile(root.resolve("movie-" + i + ".mp4")), "uuid", "uuid-" + i);
+        FileTaggerUtils.writeAttributeTo(root.resolve("movie-3.mp4"), "title", "uuid-7");
+
+        final List<Path> found = Collections.synchronizedList(new ArrayList<>());
+        final ScanResult result = new TreeScanner().find(root, "uuid", "uuid-7", found::add);
+        assertEquals(List.of(root.resolve("movie-7.mp4")), found);
+        assertEquals(40, result.getFiles());
+        assertEquals(1, result.getTaggedFiles());
+
+        // Values only differing in length or containing multi-byte characters must not match.
+        found.clear();
+        new TreeScanner().find(root, "uuid", "uuid-", found::add);
+        new TreeScanner().find(root, "uuid", "uuid-7\u00e4", found::add);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    void testInvalidParameters(@TempDir Path root) {
+        assertThrows(IllegalArgumentException.class, () -> new TreeScanner(0, null, List.of(), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new TreeScanner().scan(root.resolve("missing"), (p, a) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> new TreeScanner().scan(root, null));
+    }
+}
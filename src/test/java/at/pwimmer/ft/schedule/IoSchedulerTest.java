@@ -0,0 +1,124 @@
+package at.pwimmer.ft.schedule;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IoSchedulerTest {
+
+    @Test
+    void testPlanGroupsByDirectoryAndInode(@TempDir Path root) throws IOException {
+        final Path first = Files.createDirectories(root.resolve("a"));
+        final Path second = Files.createDirectories(root.resolve("b"));
+        final List<Path> files = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            // Interleave the directories, the plan has to bring the files of each directory together again.
+            files.add(Files.createFile(second.resolve("movie-" + i + ".mp4")));
+            files.add(Files.createFile(first.resolve("movie-" + i + ".mp4")));
+        }
+
+        final Map<AimdLimit, List<Path>> plan = new IoScheduler(8).plan(files);
+        assertEquals(1, plan.size());
+        final List<Path> ordered = plan.values().iterator().next();
+        assertEquals(40, ordered.size());
+        assertTrue(ordered.subList(0, 20).stream().allMatch(file -> file.getParent().equals(first)));
+        assertTrue(ordered.subList(20, 40).stream().allMatch(file -> file.getParent().equals(second)));
+
+        long previous = -1;
+        for(Path file : ordered.subList(0, 20)) {
+            final long inode = (Long) Files.getAttribute(file, "unix:ino", LinkOption.NOFOLLOW_LINKS);
+            assertTrue(inode > previous);
+            previous = inode;
+        }
+    }
+
+    @Test
+    void testRunAllFiles(@TempDir Path root) throws IOException, FileTaggerException {
+        final List<Path> files = new ArrayList<>();
+        for(int i = 0; i < 50; i++)
+            files.add(Files.createFile(root.resolve("movie-" + i + ".mp4")));
+        files.add(root.resolve("missing.mp4"));
+
+        final IoScheduler scheduler = new IoScheduler(4);
+        final Map<Path, String> written = new ConcurrentHashMap<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ScheduleResult result = scheduler.run(files, file -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                FileTaggerUtils.writeAttributeTo(file, "uuid", file.getFileName().toString());
+                return FileTaggerUtils.readAttributeFrom(file, "uuid");
+            }
+            finally {
+                running.decrementAndGet();
+            }
+        }, written::put);
+
+        assertEquals(51, result.getFiles());
+        assertEquals(50, written.size());
+        assertEquals(List.of(root.resolve("missing.mp4")), new ArrayList<>(result.getFailures().keySet()));
+        assertTrue(maxRunning.get() <= 4);
+        assertEquals(1, scheduler.getLimits().size());
+    }
+
+    @Test
+    void testOnlyIoCountsAsCongestion(@TempDir Path root) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for(int i = 0; i < 50; i++) {
+            files.add(Files.createFile(root.resolve("movie-" + i + ".mp4")));
+            files.add(root.resolve("missing-" + i + ".mp4"));
+        }
+
+        // Missing files, unset attributes and a slow consumer all leave the limit of the drive untouched.
+        final IoScheduler scheduler = new IoScheduler(8);
+        final ScheduleResult result = scheduler.run(files, file -> FileTaggerUtils.readAttributeFrom(file, "uuid"), (file, value) -> {});
+        assertEquals(100, result.getFailures().size());
+        final ScheduleResult slow = scheduler.run(files.subList(0, 10), Files::size, (file, size) -> {
+            try {
+                Thread.sleep(20);
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertEquals(5, slow.getFiles() - slow.getFailures().size());
+        assertTrue(scheduler.getLimits().values().iterator().next() >= 2);
+    }
+
+    @Test
+    void testAimdLimit() {
+        final AimdLimit limit = new AimdLimit(2, 1, 8);
+
+        // Fast calls grow the limit by one per window, up to the maximum.
+        for(int i = 0; i < 100; i++)  limit.sample(100_000, false);
+        assertEquals(8, limit.getLimit());
+
+        // A drive which starts queueing gets its limit cut, but only once per window.
+        limit.sample(50_000_000, false);
+        assertEquals(6, limit.getLimit());
+        for(int i = 0; i < 5; i++)  limit.sample(50_000_000, false);
+        assertEquals(6, limit.getLimit());
+        limit.sample(50_000_000, false);
+        assertEquals(4, limit.getLimit());
+        for(int i = 0; i < 100; i++)  limit.sample(50_000_000, false);
+        assertEquals(1, limit.getLimit());
+
+        // Failures count as congestion as well.
+        final AimdLimit failing = new AimdLimit(4, 1, 8);
+        for(int i = 0; i < 4; i++)  failing.sample(100_000, true);
+        assertEquals(3, failing.getLimit());
+    }
+}
@@ -0,0 +1,166 @@
+package at.pwimmer.ft.sidecar;
+
+import at.pwimmer.ft.FileTaggerUtils;
+import at.pwimmer.ft.StorageBackend;
+import at.pwimmer.ft.exceptions.FileTaggerException;
+import at.pwimmer.ft.export.ExportResult;
+import at.pwimmer.ft.export.ExportWriter;
+import at.pwimmer.ft.export.TagExporter;
+import at.pwimmer.ft.index.AttributeIndex;
+import at.pwimmer.ft.index.IndexWatcher;
+import at.pwimmer.ft.scan.ScanResult;
+import at.pwimmer.ft.scan.TreeScanner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SidecarAttributeViewTest {
+
+    @Test
+    void testSidecarBackend(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path first = Files.createFile(dir.resolve("first.mp4"));
+        final Path second = Files.createFile(dir.resolve("second.mp4"));
+
+        final StorageBackend previous = StorageBackend.getCurrent();
+        StorageBackend.setCurrent(StorageBackend.SIDECAR);
+        try {
+            FileTaggerUtils.writeAttributeTo(first, "uuid", "1111");
+            FileTaggerUtils.writeAttributeTo(first, "category", "action");
+            FileTaggerUtils.writeAttributeTo(second, "uuid", "2222");
+            assertTrue(FileTaggerUtils.deleteAttribute(first, "category"));
+            assertFalse(FileTaggerUtils.deleteAttribute(first, "category"));
+
+            assertEquals(Map.of("uuid", "1111"), FileTaggerUtils.listAttributes(first));
+            assertEquals("2222", FileTaggerUtils.readAttributeFrom(second, "uuid"));
+            assertTrue(Files.exists(dir.resolve(SidecarLog.FILE_NAME)));
+
+            // The scanner skips the sidecar-file itself and reads the tags of both files.
+            final Map<Path, Map<String, String>> scanned = new ConcurrentHashMap<>();
+            final ScanResult result = new TreeScanner().scan(dir, scanned::put);
+            assertEquals(2, result.getFiles());
+            assertEquals(Map.of(first, Map.of("uuid", "1111"), second, Map.of("uuid", "2222")), scanned);
+        }
+        finally {
+            StorageBackend.setCurrent(previous);
+        }
+
+        // Nothing has been written to the extended attributes.
+        assertTrue(FileTaggerUtils.listAttributes(first).isEmpty());
+    }
+
+    @Test
+    void testLogReplayAndCompaction(@TempDir Path dir) throws IOException {
+        final Path file = Files.createFile(dir.resolve("movie.mp4"));
+        final Path removed = Files.createFile(dir.resolve("removed.mp4"));
+        final SidecarAttributeView view = SidecarAttributeView.of(file);
+        view.write("uuid", StandardCharsets.UTF_8.encode("1234"));
+        SidecarAttributeView.of(removed).write("uuid", StandardCharsets.UTF_8.encode("5678"));
+        Files.delete(removed);
+
+        // Another process appends to the same log, which is noticed by the grown size and replayed.
+        final SidecarLog other = new SidecarLog(dir);
+        other.put("movie.mp4", "title", "Heat".getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of("uuid", "title"), view.list());
+
+        // A buffer which is too small fails like the one of the JDK, missing attributes too.
+        assertThrows(IOException.class, () -> view.read("title", ByteBuffer.allocate(2)));
+        assertThrows(IOException.class, () -> view.size("missing"));
+        assertThrows(IOException.class, () -> view.delete("missing"));
+
+        // Many overwrites make the log mostly garbage, so it is compacted and the removed file is dropped.
+        for(int i = 0; i < 200; i++)  other.put("movie.mp4", "counter", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        assertTrue(Files.size(dir.resolve(SidecarLog.FILE_NAME)) < 200 * 30);
+        assertEquals(List.of("uuid", "title", "counter"), view.list());
+        assertEquals("199", read(view, "counter"));
+        assertTrue(new SidecarLog(dir).list("removed.mp4").isEmpty());
+        assertEquals("1234", read(view, "uuid"));
+    }
+
+    @Test
+    void testConcurrentLogsOfOneDirectory(@TempDir Path dir) throws Exception {
+        Files.createFile(dir.resolve("movie.mp4"));
+        final List<SidecarLog> logs = List.of(new SidecarLog(dir), new SidecarLog(dir), new SidecarLog(dir.resolve(".")));
+
+        // Several logs of the same directory in one JVM must not fail on the overlapping file-locks.
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for(int t = 0; t < 6; t++) {
+                final SidecarLog log = logs.get(t % logs.size());
+                final String name = "attr-" + t;
+                futures.add(executor.submit(() -> {
+                    for(int i = 0; i < 50; i++)  log.put("movie.mp4", name, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                    return null;
+                }));
+            }
+            for(Future<?> future : futures)  future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        final SidecarLog log = new SidecarLog(dir);
+        assertEquals(6, log.list("movie.mp4").size());
+        for(int t = 0; t < 6; t++)  assertEquals("49", new String(log.get("movie.mp4", "attr-" + t), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testIncrementalRunsNoticeSidecarChanges(@TempDir Path dir) throws IOException, FileTaggerException {
+        final Path root = Files.createDirectories(dir.resolve("movies"));
+        final Path file = Files.createFile(root.resolve("movie.mp4"));
+        final Path indexFile = dir.resolve("file-tagger.idx");
+        final Path checkpoint = dir.resolve("file-tagger.checkpoint");
+
+        final StorageBackend previous = StorageBackend.getCurrent();
+        StorageBackend.setCurrent(StorageBackend.SIDECAR);
+        try {
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "1111");
+            final IndexWatcher watcher = new IndexWatcher(root, "uuid", indexFile);
+            assertEquals(1, watcher.catchUp());
+            assertEquals(1, export(root, checkpoint).getExported());
+
+            // Only the sidecar-file changes, but the index and the export have to read the file again.
+            FileTaggerUtils.writeAttributeTo(file, "uuid", "2222");
+            assertEquals(1, new IndexWatcher(root, "uuid", indexFile).catchUp());
+            try(AttributeIndex index = AttributeIndex.open(indexFile)) {
+                assertEquals(List.of(file.toAbsolutePath()), index.find("2222"));
+            }
+
+            // The sidecar-file itself is never indexed or exported.
+            final ExportResult result = export(root, checkpoint);
+            assertEquals(1, result.getExported());
+            assertEquals(1, result.getFiles());
+            assertEquals(1, watcher.getKnownFiles());
+        }
+        finally {
+            StorageBackend.setCurrent(previous);
+        }
+    }
+
+    private static ExportResult export(Path root, Path checkpoint) throws IOException, FileTaggerException {
+        try(ExportWriter writer = ExportWriter.of(ExportWriter.Format.NDJSON, OutputStream.nullOutputStream())) {
+            return new TagExporter(root, checkpoint).export(writer);
+        }
+    }
+
+    private static String read(SidecarAttributeView view, String name) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(view.size(name));
+        view.read(name, buffer);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+}